@@ -0,0 +1,249 @@
+package com.cisco.aws;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact, thread-safe string map for endpoint attributes.
+ * <p>
+ * Attributes named in the {@link AttributeSchema} are kept in a sparse slot
+ * table: the ids of the attributes present, sorted, in a {@code short[]} and
+ * their values in a parallel array. Any other name goes to an overflow
+ * {@link HashMap} created on first use. An endpoint with a dozen or two
+ * attributes therefore costs two small arrays instead of a hash table plus
+ * one node per entry.
+ * <p>
+ * Like {@link java.util.concurrent.ConcurrentHashMap}, null keys and values
+ * are rejected and iteration works on a snapshot, so it never throws
+ * {@link java.util.ConcurrentModificationException}. All access is guarded by
+ * the map's monitor; endpoints are rarely contended.
+ */
+final class AttributeMap extends AbstractMap<String, String> implements ConcurrentMap<String, String> {
+
+    private static final short[] NO_IDS = new short[0];
+    private static final String[] NO_VALUES = new String[0];
+
+    private short[] ids = NO_IDS;
+    private String[] values = NO_VALUES;
+    private int size;
+    private HashMap<String, String> overflow;
+
+    AttributeMap() {
+    }
+
+    AttributeMap(Map<String, String> attributes) {
+        putAll(attributes);
+    }
+
+    @Override
+    public synchronized int size() {
+        return size + (overflow == null ? 0 : overflow.size());
+    }
+
+    @Override
+    public synchronized String get(Object key) {
+        int id = id(key);
+        if (id < 0) {
+            return overflow == null ? null : overflow.get(key);
+        }
+        int slot = slot(id);
+        return slot < 0 ? null : values[slot];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public synchronized String put(String key, String value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        int id = id(key);
+        if (id < 0) {
+            if (overflow == null) {
+                overflow = new HashMap<>(4);
+            }
+            return overflow.put(key, value);
+        }
+        int slot = slot(id);
+        if (slot >= 0) {
+            String previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        slot = -slot - 1;
+        if (size == ids.length) {
+            int capacity = Math.max(4, size + (size >> 1));
+            ids = Arrays.copyOf(ids, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        System.arraycopy(ids, slot, ids, slot + 1, size - slot);
+        System.arraycopy(values, slot, values, slot + 1, size - slot);
+        ids[slot] = (short) id;
+        values[slot] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public synchronized String remove(Object key) {
+        int id = id(key);
+        if (id < 0) {
+            return overflow == null ? null : overflow.remove(key);
+        }
+        int slot = slot(id);
+        if (slot < 0) {
+            return null;
+        }
+        String previous = values[slot];
+        System.arraycopy(ids, slot + 1, ids, slot, size - slot - 1);
+        System.arraycopy(values, slot + 1, values, slot, size - slot - 1);
+        values[--size] = null;
+        return previous;
+    }
+
+    @Override
+    public synchronized void clear() {
+        ids = NO_IDS;
+        values = NO_VALUES;
+        size = 0;
+        overflow = null;
+    }
+
+    @Override
+    public synchronized String putIfAbsent(String key, String value) {
+        String current = get(key);
+        return current != null ? current : put(key, value);
+    }
+
+    @Override
+    public synchronized boolean remove(Object key, Object value) {
+        String current = get(key);
+        if (current == null || !current.equals(value)) {
+            return false;
+        }
+        remove(key);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean replace(String key, String oldValue, String newValue) {
+        String current = get(key);
+        if (current == null || !current.equals(oldValue)) {
+            return false;
+        }
+        put(key, newValue);
+        return true;
+    }
+
+    @Override
+    public synchronized String replace(String key, String value) {
+        return get(key) == null ? null : put(key, value);
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new EntryIterator(snapshot());
+            }
+
+            @Override
+            public int size() {
+                return AttributeMap.this.size();
+            }
+        };
+    }
+
+    private synchronized List<Map.Entry<String, String>> snapshot() {
+        List<Map.Entry<String, String>> entries = new ArrayList<>(size());
+        for (int i = 0; i < size; i++) {
+            entries.add(new Entry(AttributeSchema.name(ids[i]), values[i]));
+        }
+        if (overflow != null) {
+            for (Map.Entry<String, String> e : overflow.entrySet()) {
+                entries.add(new Entry(e.getKey(), e.getValue()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return the schema id, or -1 for names outside the schema.
+     */
+    private static int id(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return key instanceof String ? AttributeSchema.id((String) key) : -1;
+    }
+
+    /**
+     * @return the slot holding {@code id}, or {@code -(insertion point) - 1}.
+     */
+    private int slot(int id) {
+        return Arrays.binarySearch(ids, 0, size, (short) id);
+    }
+
+    /**
+     * Snapshot entry writing through to the map, as ConcurrentHashMap's do.
+     */
+    private final class Entry extends AbstractMap.SimpleEntry<String, String> {
+        private static final long serialVersionUID = 1L;
+
+        Entry(String key, String value) {
+            super(key, value);
+        }
+
+        @Override
+        public String setValue(String value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private final List<Map.Entry<String, String>> entries;
+        private int next;
+        private Map.Entry<String, String> last;
+
+        EntryIterator(List<Map.Entry<String, String>> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < entries.size();
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = entries.get(next++);
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            AttributeMap.this.remove(last.getKey());
+            last = null;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.cisco.aws;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the well-known endpoint attribute names, each given a small
+ * integer id so that {@link AttributeMap} can store values by id instead of
+ * in hash map nodes.
+ * <p>
+ * The schema is fixed when the class loads: every {@code static final String}
+ * constant declared on {@link EndPoint}, plus the probe attributes listed
+ * here that have no constant. Names outside the schema are still accepted by
+ * {@link AttributeMap}, they just go to its overflow map.
+ */
+final class AttributeSchema {
+
+    /**
+     * Probe attributes seen on most endpoints that EndPoint has no constant for.
+     */
+    private static final String[] PROBE_ATTRS = {
+            "dhcp-parameter-request-list", "dhcp-class-identifier", "dhcp-client-identifier",
+            "dhcp-requested-address", "dhcp-message-type", "Calling-Station-ID", "Called-Station-ID",
+            "NAS-Port", "NAS-Port-Type", "NAS-Port-Id", "NAS-Identifier", "Framed-IP-Address",
+            "Acct-Session-Id", "Service-Type", "cdpCacheAddress", "cdpCacheDeviceId", "cdpCachePlatform",
+            "lldpSystemName", "lldpSystemDescription", "assetIpAddress"
+    };
+
+    private static final Map<String, Integer> IDS = new HashMap<>();
+    private static final String[] NAMES;
+
+    static {
+        List<String> names = new ArrayList<>();
+        for (Field field : EndPoint.class.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (field.getType() == String.class && Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers)) {
+                try {
+                    field.setAccessible(true);
+                    add((String) field.get(null), names);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        for (String name : EndPoint.OS_ATTRS) {
+            add(name, names);
+        }
+        for (String name : PROBE_ATTRS) {
+            add(name, names);
+        }
+        NAMES = names.toArray(new String[names.size()]);
+    }
+
+    private AttributeSchema() {
+    }
+
+    private static void add(String name, List<String> names) {
+        if (name != null && !IDS.containsKey(name) && names.size() < Short.MAX_VALUE) {
+            IDS.put(name, names.size());
+            names.add(name);
+        }
+    }
+
+    /**
+     * @return the id of a well-known attribute, or -1.
+     */
+    static int id(String name) {
+        Integer id = IDS.get(name);
+        return id == null ? -1 : id;
+    }
+
+    static String name(int id) {
+        return NAMES[id];
+    }
+
+    static int size() {
+        return NAMES.length;
+    }
+}
@@ -16,7 +16,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
@@ -509,13 +509,14 @@ public class EndPoint {
     public static final int MAX_NUM_IPV6 = 8;
 
     /**
-     * hashmap of the attributes associated with the endpoint.
+     * map of the attributes associated with the endpoint, stored compactly by
+     * attribute schema id.
      */
-    private ConcurrentHashMap<String, String> attributes = new ConcurrentHashMap<String, String>();
+    private ConcurrentMap<String, String> attributes = new AttributeMap();
     /**
      * custom attribute map
      */
-    private Map<String, String> customAttributes = new ConcurrentHashMap<String, String>();
+    private Map<String, String> customAttributes = new AttributeMap();
     /**
      * Set of changes attributes
      */
@@ -772,6 +773,14 @@ public class EndPoint {
         return (String) attributes.get(MACADDRESS);
     }
 
+    /**
+     * @return the MAC address attribute parsed to its 48-bit form, or
+     * {@link MacAddress#INVALID} if missing or malformed.
+     */
+    public long macAddress() {
+        return MacAddress.parse(getMac());
+    }
+
     public static String getMATCHEDVALUE() {
         return MATCHEDVALUE;
     }
@@ -1168,12 +1177,15 @@ public class EndPoint {
         return MAX_NUM_IPV6;
     }
 
-    public ConcurrentHashMap<String, String> getAttributes() {
+    public ConcurrentMap<String, String> getAttributes() {
         return attributes;
     }
 
-    public void setAttributes(ConcurrentHashMap<String, String> attributes) {
-        this.attributes = attributes;
+    /**
+     * Replaces the attributes with a copy of the given map.
+     */
+    public void setAttributes(Map<String, String> attributes) {
+        this.attributes = new AttributeMap(attributes);
     }
 
     public Map<String, String> getCustomAttributes() {
@@ -0,0 +1,178 @@
+package com.cisco.aws;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary indexes over {@link EndPoint#SEARCHABLE_ATTRS}: for each
+ * attribute, value to the {@link MacSet} of endpoints holding it.
+ * <p>
+ * Maintained by the {@link EndPointRegistry} under the shard lock of the
+ * endpoint that changed, from the indexed values before and after the change,
+ * so updates to one endpoint are applied in order. Each posting set is changed
+ * inside its map bin, so a set emptied and dropped by one endpoint cannot
+ * swallow an address another endpoint adds at the same time.
+ * <p>
+ * A search reads the sets while they change: an endpoint updated during the
+ * search may or may not be in the result, every other one is.
+ */
+final class EndPointIndex {
+
+    private static final String[] ATTRS = EndPoint.SEARCHABLE_ATTRS;
+
+    private static final Map<String, Integer> POSITIONS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < ATTRS.length; i++) {
+            POSITIONS.put(ATTRS[i], i);
+        }
+    }
+
+    private final List<ConcurrentHashMap<String, MacSet>> indexes = new ArrayList<>(ATTRS.length);
+
+    EndPointIndex() {
+        for (int i = 0; i < ATTRS.length; i++) {
+            indexes.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    static boolean isSearchable(String attribute) {
+        return POSITIONS.containsKey(attribute);
+    }
+
+    /**
+     * @return the indexed attribute values of {@code endPoint}, null ones for
+     * missing attributes or no endpoint.
+     */
+    static String[] values(EndPoint endPoint) {
+        String[] values = new String[ATTRS.length];
+        if (endPoint != null) {
+            Map<String, String> attributes = endPoint.getAttributes();
+            for (int i = 0; i < ATTRS.length; i++) {
+                values[i] = attributes.get(ATTRS[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Moves {@code mac} from the postings of its old values to those of its
+     * new ones.
+     */
+    void update(long mac, String[] before, String[] after) {
+        for (int i = 0; i < ATTRS.length; i++) {
+            String from = before[i];
+            String to = after[i];
+            if (from == null ? to == null : from.equals(to)) {
+                continue;
+            }
+            ConcurrentHashMap<String, MacSet> index = indexes.get(i);
+            if (from != null) {
+                index.computeIfPresent(from, (value, macs) -> {
+                    macs.remove(mac);
+                    return macs.isEmpty() ? null : macs;
+                });
+            }
+            if (to != null) {
+                index.compute(to, (value, macs) -> {
+                    if (macs == null) {
+                        macs = new MacSet();
+                    }
+                    macs.add(mac);
+                    return macs;
+                });
+            }
+        }
+    }
+
+    /**
+     * Finds the endpoints matching every attribute in {@code terms} with any
+     * of the values listed for it. Starts from the smallest attribute and
+     * probes the others for each candidate, so the cost follows the most
+     * selective term, not the number of endpoints.
+     *
+     * @param terms attribute to accepted values, at least one attribute.
+     * @param macs receives at most {@code limit} matches.
+     * @return the number of matches.
+     * @throws IllegalArgumentException for an attribute that is not indexed.
+     */
+    long search(Map<String, ? extends Collection<String>> terms, int limit, List<Long> macs) {
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("No search attribute given");
+        }
+        List<List<MacSet>> groups = new ArrayList<>(terms.size());
+        for (Map.Entry<String, ? extends Collection<String>> term : terms.entrySet()) {
+            Integer position = POSITIONS.get(term.getKey());
+            if (position == null) {
+                throw new IllegalArgumentException("Not a searchable attribute: " + term.getKey());
+            }
+            List<MacSet> group = new ArrayList<>();
+            for (String value : term.getValue()) {
+                MacSet postings = indexes.get(position).get(value);
+                if (postings != null && !group.contains(postings)) {
+                    group.add(postings);
+                }
+            }
+            if (group.isEmpty()) {
+                return 0;
+            }
+            groups.add(group);
+        }
+        groups.sort(Comparator.comparingLong(EndPointIndex::size));
+
+        long count = 0;
+        List<MacSet> smallest = groups.get(0);
+        MacSet seen = smallest.size() > 1 ? new MacSet() : null;
+        for (MacSet postings : smallest) {
+            for (long mac : postings.toArray()) {
+                if ((seen == null || seen.add(mac)) && matchesAll(groups, mac)) {
+                    if (count++ < limit) {
+                        macs.add(mac);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean matchesAll(List<List<MacSet>> groups, long mac) {
+        for (int i = 1; i < groups.size(); i++) {
+            boolean any = false;
+            for (MacSet postings : groups.get(i)) {
+                if (postings.contains(mac)) {
+                    any = true;
+                    break;
+                }
+            }
+            if (!any) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long size(List<MacSet> group) {
+        long size = 0;
+        for (MacSet postings : group) {
+            size += postings.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of distinct values indexed per attribute.
+     */
+    Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        for (int i = 0; i < ATTRS.length; i++) {
+            stats.put(ATTRS[i], (long) indexes.get(i).size());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,154 @@
+package com.cisco.aws;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies an incoming, possibly partial, endpoint onto the stored one.
+ * <p>
+ * Probes only send what they saw, so attributes the update does not carry
+ * are kept. Attributes the probe does not own, {@link EndPoint#NOT_MERGED_ATTR}
+ * or {@link EndPoint#NOT_GUEST_MERGED_ATTR} for guest updates, are never
+ * taken from the update, nor kept from an endpoint seen for the first time.
+ * IPv6 addresses are added to the stored ones, which keep the
+ * {@link EndPoint#MAX_NUM_IPV6} most recently seen. Whatever actually changed
+ * is recorded in the stored endpoint's
+ * {@link EndPoint#getModifiedAttributeSet()}, which tells whether it has to be
+ * classified again.
+ */
+final class EndPointMerger {
+
+    /**
+     * Attributes FingerBank classifies on. A change to any of them makes the
+     * stored classification stale.
+     */
+    private static final String[] SIGNIFICANT_ATTRS = {
+            "dhcp-parameter-request-list", "dhcp-class-identifier", EndPoint.USERAGENT, EndPoint.HOSTNAME};
+
+    /**
+     * {@link EndPoint#ENDPOINTSOURCE} prefix of updates from the guest flow.
+     */
+    private static final String GUEST_SOURCE = "Guest";
+
+    private EndPointMerger() {
+    }
+
+    /**
+     * Merges {@code update} into {@code stored} and sets the modified attribute
+     * set of both to the names of the attributes and custom attributes that
+     * changed, empty if none did. The update's copy is the one to decide on,
+     * the stored one is replaced by the next merge. Callers serialise merges
+     * into the same endpoint.
+     */
+    static void merge(EndPoint stored, EndPoint update) {
+        Set<String> notMerged = notMerged(update);
+        Set<String> modified = new HashSet<>();
+        apply(stored.getAttributes(), update.getAttributes(), notMerged, modified);
+        if (update.getCustomAttributes() != null && !update.getCustomAttributes().isEmpty()) {
+            if (stored.getCustomAttributes() == null) {
+                stored.setCustomAttributes(new AttributeMap());
+            }
+            apply(stored.getCustomAttributes(), update.getCustomAttributes(), Collections.<String>emptySet(), modified);
+        }
+        if (update.getIpv6Addresses() != null && !update.getIpv6Addresses().isEmpty()) {
+            if (stored.getIpv6Addresses() == null) {
+                stored.setIpv6Addresses(new LinkedHashSet<>());
+            }
+            if (addIpv6(stored.getIpv6Addresses(), update.getIpv6Addresses())) {
+                modified.add(EndPoint.ENDPOINTIPV6);
+            }
+        }
+        stored.setModifiedAttributeSet(modified);
+        update.setModifiedAttributeSet(modified);
+    }
+
+    /**
+     * Drops the attributes the probe does not own from an endpoint seen for
+     * the first time, so a classification sent by the client is never stored,
+     * and marks every remaining attribute as modified.
+     */
+    static void created(EndPoint endPoint) {
+        for (String name : notMerged(endPoint)) {
+            endPoint.getAttributes().remove(name);
+        }
+        Set<String> modified = new HashSet<>(endPoint.getAttributes().keySet());
+        if (endPoint.getCustomAttributes() != null) {
+            modified.addAll(endPoint.getCustomAttributes().keySet());
+        }
+        endPoint.setModifiedAttributeSet(modified);
+    }
+
+    /**
+     * @param modified what the update changed, see {@link #merge(EndPoint, EndPoint)}.
+     * @return true unless the stored endpoint is classified and the update
+     * left every significant attribute as it was.
+     */
+    static boolean needsClassification(EndPoint stored, Set<String> modified) {
+        if (!stored.getAttributes().containsKey(EndPoint.ENDPOINTPOLICY) || modified == null) {
+            return true;
+        }
+        for (String name : SIGNIFICANT_ATTRS) {
+            if (modified.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the significant attribute values of {@code endPoint}, in a
+     * fixed order. A classification applies to the endpoint only as long as
+     * these stay equal.
+     */
+    static String[] significantValues(EndPoint endPoint) {
+        String[] values = new String[SIGNIFICANT_ATTRS.length];
+        for (int i = 0; i < SIGNIFICANT_ATTRS.length; i++) {
+            values[i] = endPoint.getAttributes().get(SIGNIFICANT_ATTRS[i]);
+        }
+        return values;
+    }
+
+    private static Set<String> notMerged(EndPoint update) {
+        String source = update.getAttributes().get(EndPoint.ENDPOINTSOURCE);
+        boolean guest = source != null && source.startsWith(GUEST_SOURCE);
+        return guest ? EndPoint.NOT_GUEST_MERGED_ATTR : EndPoint.NOT_MERGED_ATTR;
+    }
+
+    /**
+     * Adds the addresses as the most recently seen, dropping the oldest ones
+     * beyond {@link EndPoint#MAX_NUM_IPV6}.
+     *
+     * @return true if addresses were added or dropped.
+     */
+    private static boolean addIpv6(Set<String> stored, Set<String> update) {
+        boolean changed = false;
+        for (String ip : update) {
+            if (ip != null) {
+                changed |= !stored.remove(ip);
+                stored.add(ip);
+            }
+        }
+        Iterator<String> oldest = stored.iterator();
+        while (stored.size() > EndPoint.MAX_NUM_IPV6) {
+            oldest.next();
+            oldest.remove();
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static void apply(Map<String, String> stored, Map<String, String> update, Set<String> notMerged,
+                              Set<String> modified) {
+        for (Map.Entry<String, String> attribute : update.entrySet()) {
+            String name = attribute.getKey();
+            String value = attribute.getValue();
+            if (value != null && !notMerged.contains(name) && !value.equals(stored.put(name, value))) {
+                modified.add(name);
+            }
+        }
+    }
+}
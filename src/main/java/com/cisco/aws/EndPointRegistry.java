@@ -0,0 +1,467 @@
+package com.cisco.aws;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Endpoints seen by the service, keyed by their 48-bit MAC address.
+ * <p>
+ * The key space is split into independently locked shards, each an open
+ * addressing table of primitive {@code long} keys with a parallel array of
+ * endpoints. No key objects or entry nodes are allocated, so millions of
+ * endpoints cost little beyond the endpoints themselves, and requests for
+ * different MACs rarely contend.
+ * <p>
+ * The {@link EndPoint#SEARCHABLE_ATTRS} of stored endpoints are indexed, see
+ * {@link #search(Map, int, List)}, and so are their IP addresses, see
+ * {@link #findByIp(String)}. The indexes follow changes made through the
+ * registry, so a stored endpoint must only be changed through
+ * {@link #computeIfPresent(long, Remapping)} or {@link #merge(EndPoint)}.
+ * <p>
+ * Nothing expires, so {@link #merge(EndPoint)} bounds what it stores: locally
+ * administered MACs, which phones randomise per network, are not stored by
+ * default, and no new endpoints are stored once a shard holds its share of
+ * {@code endpoint.registry.max-size}.
+ */
+@Component
+public class EndPointRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(EndPointRegistry.class);
+
+    /**
+     * Number of shards, rounded up to a power of two, at least 2.
+     */
+    @Value("${endpoint.registry.shards:64}")
+    private int shardCount = 64;
+
+    /**
+     * Endpoints the registry is sized for up front, to avoid rehashing while
+     * it fills.
+     */
+    @Value("${endpoint.registry.initial-capacity:65536}")
+    private int initialCapacity = 65536;
+
+    /**
+     * Endpoints {@link #merge(EndPoint)} stores at most, split evenly over
+     * the shards; 0 for no limit.
+     */
+    @Value("${endpoint.registry.max-size:1000000}")
+    private long maxSize = 1000000;
+
+    /**
+     * Whether {@link #merge(EndPoint)} stores endpoints with a locally
+     * administered MAC.
+     */
+    @Value("${endpoint.registry.store-locally-administered:false}")
+    private boolean storeLocallyAdministered;
+
+    private Shard[] shards;
+    private int shardShift;
+    private int shardLimit;
+
+    private final EndPointIndex index = new EndPointIndex();
+    private final IpIndex ipIndex = new IpIndex();
+
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong notStored = new AtomicLong();
+
+    /**
+     * Recomputes a stored endpoint, see
+     * {@link #computeIfPresent(long, Remapping)}.
+     */
+    interface Remapping {
+        EndPoint apply(long mac, EndPoint current);
+    }
+
+    public EndPointRegistry() {
+    }
+
+    EndPointRegistry(int shardCount, int initialCapacity) {
+        this(shardCount, initialCapacity, 0, true);
+    }
+
+    EndPointRegistry(int shardCount, int initialCapacity, long maxSize, boolean storeLocallyAdministered) {
+        this.shardCount = shardCount;
+        this.initialCapacity = initialCapacity;
+        this.maxSize = maxSize;
+        this.storeLocallyAdministered = storeLocallyAdministered;
+        init();
+    }
+
+    @PostConstruct
+    public void init() {
+        // One bit at least, a shift by 64 would not shift at all
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(2, shardCount) - 1);
+        shards = new Shard[1 << bits];
+        shardShift = 64 - bits;
+        shardLimit = maxSize <= 0 ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE,
+                Math.max(1, maxSize / shards.length));
+        int perShard = Math.max(1, Math.min(shardLimit, initialCapacity / shards.length));
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(perShard);
+        }
+        logger.info("Endpoint registry with " + shards.length + " shards"
+                + (maxSize > 0 ? ", up to " + (long) shardLimit * shards.length + " endpoints" : ""));
+    }
+
+    /**
+     * @return the endpoint stored for {@code mac}, or null.
+     */
+    public EndPoint get(long mac) {
+        long hash = hash(mac);
+        Shard shard = shardFor(hash);
+        synchronized (shard) {
+            return shard.get(mac, hash);
+        }
+    }
+
+    /**
+     * @return the endpoint previously stored for {@code mac}, or null.
+     */
+    public EndPoint put(long mac, EndPoint endPoint) {
+        if (endPoint == null) {
+            throw new NullPointerException();
+        }
+        long hash = hash(mac);
+        Shard shard = shardFor(hash);
+        synchronized (shard) {
+            EndPoint previous = shard.put(mac, hash, endPoint);
+            reindex(mac, indexed(previous), endPoint);
+            return previous;
+        }
+    }
+
+    /**
+     * @return the endpoint removed, or null if none was stored.
+     */
+    public EndPoint remove(long mac) {
+        long hash = hash(mac);
+        Shard shard = shardFor(hash);
+        synchronized (shard) {
+            EndPoint previous = shard.remove(mac, hash);
+            if (previous != null) {
+                reindex(mac, indexed(previous), null);
+            }
+            return previous;
+        }
+    }
+
+    /**
+     * Replaces the endpoint stored for {@code mac} with what {@code remapping}
+     * returns for it, or removes it if that is null. Nothing happens when no
+     * endpoint is stored. The remapping may also change the stored endpoint in
+     * place. It runs under the shard lock and must be short.
+     *
+     * @return the endpoint now stored, or null.
+     */
+    public EndPoint computeIfPresent(long mac, Remapping remapping) {
+        long hash = hash(mac);
+        Shard shard = shardFor(hash);
+        synchronized (shard) {
+            EndPoint current = shard.get(mac, hash);
+            if (current == null) {
+                return null;
+            }
+            Indexed before = indexed(current);
+            EndPoint updated = remapping.apply(mac, current);
+            if (updated == null) {
+                shard.remove(mac, hash);
+            } else if (updated != current) {
+                shard.put(mac, hash, updated);
+            }
+            reindex(mac, before, updated);
+            return updated;
+        }
+    }
+
+    /**
+     * Merges a profiling update into the endpoint stored for its MAC, see
+     * {@link EndPointMerger}. An endpoint seen for the first time is stored
+     * without the attributes the probe does not own, with all the others
+     * marked modified. Updates without a valid MAC are not stored, nor
+     * locally administered MACs unless configured, nor new endpoints once the
+     * shard is full; those are handled like a first sighting every time.
+     *
+     * @return the stored endpoint, {@code update} itself when it was not
+     * stored before.
+     */
+    public EndPoint merge(EndPoint update) {
+        return merge(update.macAddress(), update);
+    }
+
+    /**
+     * Same as {@link #merge(EndPoint)} for a caller that has already parsed
+     * the update's MAC address.
+     *
+     * @param mac {@code update.macAddress()}.
+     */
+    public EndPoint merge(long mac, EndPoint update) {
+        if (mac == MacAddress.INVALID
+                || (!storeLocallyAdministered && MacAddress.isLocallyAdministered(mac))) {
+            EndPointMerger.created(update);
+            notStored.incrementAndGet();
+            return update;
+        }
+        long hash = hash(mac);
+        Shard shard = shardFor(hash);
+        synchronized (shard) {
+            EndPoint stored = shard.get(mac, hash);
+            if (stored == null) {
+                EndPointMerger.created(update);
+                if (shard.size >= shardLimit) {
+                    notStored.incrementAndGet();
+                    return update;
+                }
+                shard.put(mac, hash, update);
+                reindex(mac, indexed(null), update);
+                return update;
+            }
+            Indexed before = indexed(stored);
+            EndPointMerger.merge(stored, update);
+            reindex(mac, before, stored);
+            merged.incrementAndGet();
+            return stored;
+        }
+    }
+
+    /**
+     * Answers a repeat profiling request from the registry.
+     *
+     * @param stored the endpoint {@code update} was merged into.
+     * @return the stored device name if the update changed nothing it was
+     * classified on, or null if the endpoint has to be classified again.
+     */
+    public String knownClassification(EndPoint stored, EndPoint update) {
+        if (EndPointMerger.needsClassification(stored, update.getModifiedAttributeSet())) {
+            return null;
+        }
+        reused.incrementAndGet();
+        return stored.getAttributes().get(EndPoint.ENDPOINTPOLICY);
+    }
+
+    /**
+     * @return what a classification of {@code stored} is based on, to be
+     * taken before the lookup and handed to
+     * {@link #classified(long, EndPoint, String[], String)}.
+     */
+    public String[] classificationBasis(EndPoint stored) {
+        return EndPointMerger.significantValues(stored);
+    }
+
+    /**
+     * Records the device a stored endpoint was classified as. An unknown
+     * device clears the previous classification, it no longer matches the
+     * attributes. A late answer is dropped once the endpoint was replaced or
+     * its significant attributes changed since {@code basis} was taken, the
+     * lookup for the newer attributes records its own answer.
+     *
+     * @param mac the MAC {@code stored} was merged under.
+     */
+    public void classified(long mac, EndPoint stored, String[] basis, String device) {
+        Remapping classify = (key, current) -> {
+            if (current == stored && Arrays.equals(EndPointMerger.significantValues(current), basis)) {
+                if (device == null || device.equals("Unknown")) {
+                    current.getAttributes().remove(EndPoint.ENDPOINTPOLICY);
+                } else {
+                    current.getAttributes().put(EndPoint.ENDPOINTPOLICY, device);
+                }
+            }
+            return current;
+        };
+        if (mac == MacAddress.INVALID) {
+            classify.apply(mac, stored);
+        } else {
+            computeIfPresent(mac, classify);
+        }
+    }
+
+    /**
+     * Finds stored endpoints by their searchable attributes: those matching
+     * every attribute in {@code terms} with any of the values listed for it.
+     *
+     * @param macs receives at most {@code limit} matching MACs.
+     * @return the number of matches.
+     * @throws IllegalArgumentException for an attribute that is not
+     * searchable.
+     */
+    public long search(Map<String, ? extends Collection<String>> terms, int limit, List<Long> macs) {
+        return index.search(terms, limit, macs);
+    }
+
+    /**
+     * @return the number of distinct values indexed per searchable attribute.
+     */
+    public Map<String, Long> indexStats() {
+        return index.stats();
+    }
+
+    /**
+     * @return the MACs of the stored endpoints holding {@code ip}.
+     * @throws IllegalArgumentException if {@code ip} is not an IP address.
+     */
+    public long[] findByIp(String ip) {
+        return ipIndex.lookup(ip);
+    }
+
+    /**
+     * Lists the addresses of stored endpoints inside a CIDR block, in address
+     * order.
+     *
+     * @param addresses receives at most {@code limit} addresses with the MACs
+     * holding them.
+     * @return the number of addresses in the block.
+     * @throws IllegalArgumentException if {@code cidr} is malformed.
+     */
+    public long findByIpRange(String cidr, int limit, Map<String, long[]> addresses) {
+        return ipIndex.range(cidr, limit, addresses);
+    }
+
+    private static Indexed indexed(EndPoint endPoint) {
+        return new Indexed(EndPointIndex.values(endPoint), IpIndex.addresses(endPoint));
+    }
+
+    /**
+     * Brings the indexes from what {@code mac} held before a change to what
+     * {@code after} holds now, null if it was removed.
+     */
+    private void reindex(long mac, Indexed before, EndPoint after) {
+        Indexed now = indexed(after);
+        index.update(mac, before.values, now.values);
+        if (!before.addresses.equals(now.addresses)) {
+            ipIndex.update(mac, before.addresses, now.addresses);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return endpoints stored, table slots allocated, updates merged into a
+     * stored endpoint, new endpoints not stored for their MAC or a full shard,
+     * classifications reused and IP addresses indexed.
+     */
+    public Map<String, Long> stats() {
+        long size = 0;
+        long capacity = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.size;
+                capacity += shard.keys.length;
+            }
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", size);
+        stats.put("capacity", capacity);
+        stats.put("shards", (long) shards.length);
+        stats.put("merged", merged.get());
+        stats.put("notStored", notStored.get());
+        stats.put("reused", reused.get());
+        long[] addresses = ipIndex.size();
+        stats.put("ipv4Addresses", addresses[0]);
+        stats.put("ipv6Addresses", addresses[1]);
+        return stats;
+    }
+
+    private Shard shardFor(long hash) {
+        return shards[(int) (hash >>> shardShift)];
+    }
+
+    /**
+     * Spreads the MAC over all 64 bits: the top bits pick the shard, the low
+     * bits the slot within it.
+     */
+    private static long hash(long mac) {
+        if ((mac & ~0xFFFFFFFFFFFFL) != 0) {
+            throw new IllegalArgumentException("Not a 48-bit MAC address: " + mac);
+        }
+        return MacAddress.hash(mac);
+    }
+
+    /**
+     * What the indexes hold for an endpoint.
+     */
+    private static final class Indexed {
+        final String[] values;
+        final List<Object> addresses;
+
+        Indexed(String[] values, List<Object> addresses) {
+            this.values = values;
+            this.addresses = addresses;
+        }
+    }
+
+    /**
+     * {@link MacTables} linear probing table with a parallel array of
+     * endpoints.
+     */
+    private static final class Shard {
+        long[] keys;
+        EndPoint[] values;
+        int size;
+
+        Shard(int capacity) {
+            allocate(MacTables.tableLength(capacity));
+        }
+
+        private void allocate(int length) {
+            keys = MacTables.newKeys(length);
+            values = new EndPoint[length];
+        }
+
+        EndPoint get(long mac, long hash) {
+            return values[MacTables.slot(keys, mac, hash)];
+        }
+
+        EndPoint put(long mac, long hash, EndPoint endPoint) {
+            int i = MacTables.slot(keys, mac, hash);
+            EndPoint previous = values[i];
+            if (previous == null) {
+                keys[i] = mac;
+                if (MacTables.isOverloaded(keys, ++size)) {
+                    values[i] = endPoint;
+                    rehash();
+                    return null;
+                }
+            }
+            values[i] = endPoint;
+            return previous;
+        }
+
+        EndPoint remove(long mac, long hash) {
+            int i = MacTables.slot(keys, mac, hash);
+            EndPoint previous = values[i];
+            if (previous == null) {
+                return null;
+            }
+            MacTables.remove(keys, values, i);
+            size--;
+            return previous;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            EndPoint[] oldValues = values;
+            allocate(oldKeys.length << 1);
+            MacTables.rehash(oldKeys, oldValues, keys, values);
+        }
+    }
+}
@@ -1,78 +1,646 @@
 package com.cisco.aws;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientRequest;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
 
+/**
+ * Client for the FingerBank device interrogation API.
+ * <p>
+ * One Jersey client is created at startup and shared by all requests; it is
+ * thread-safe once configured. Connections are kept alive by the JDK
+ * HttpURLConnection pool, sized through {@code http.maxConnections}, and the
+ * number of calls in flight upstream is capped by a semaphore.
+ * <p>
+ * Device names are cached by the normalised payload, so endpoints sharing a
+ * fingerprint are answered locally until the entry expires. Fingerprints
+ * FingerBank does not know are kept apart with a shorter lifetime, so that
+ * unrecognisable devices fall back to the OUI lookup without a round trip
+ * but cannot crowd out known ones. Concurrent misses for the same fingerprint
+ * share a single upstream call.
+ * <p>
+ * {@link #postDeviceNameAsync(EndPoint)} runs the upstream call on a bounded
+ * executor of its own, so slow FingerBank answers tie up neither servlet
+ * threads nor more than a fixed number of pending lookups.
+ * <p>
+ * When {@code fingerbank.local-db} is set, payloads matching the local
+ * fingerprint database are answered without calling the API at all.
+ * <p>
+ * Upstream calls are paced by a {@link FingerBankRateLimiter} to stay within
+ * the API quota, with new endpoints served ahead of re-profiled ones, and
+ * guarded by a {@link FingerBankCircuitBreaker} that fails fast while the API
+ * is erroring or slow and adapts the read timeout to its latency. Optionally,
+ * calls slower than the observed p95 are hedged with a second copy within a
+ * small budget.
+ */
+@Component
 public class FingerBank {
 
+	private static final Logger logger = LoggerFactory.getLogger(FingerBank.class);
+
+	@Value("${fingerbank.url:https://api.fingerbank.org/api/v2/combinations/interrogate}")
+	private String url;
+
+	@Value("${fingerbank.key:}")
+	private String key;
+
+	@Value("${fingerbank.connect-timeout-ms:2000}")
+	private int connectTimeoutMs;
+
+	@Value("${fingerbank.read-timeout-ms:5000}")
+	private int readTimeoutMs;
+
+	/**
+	 * Maximum number of concurrent upstream calls, also the keep-alive pool size.
+	 */
+	@Value("${fingerbank.max-concurrent-requests:20}")
+	private int maxConcurrentRequests;
+
+	/**
+	 * How long a request waits for a free upstream slot before failing.
+	 */
+	@Value("${fingerbank.acquire-timeout-ms:1000}")
+	private long acquireTimeoutMs;
+
+	/**
+	 * Threads running asynchronous lookups, and how many more lookups may
+	 * wait for one before new ones are rejected.
+	 */
+	@Value("${fingerbank.async.threads:20}")
+	private int asyncThreads;
+
+	@Value("${fingerbank.async.queue-size:200}")
+	private int asyncQueueSize;
+
+	/**
+	 * Upstream call rate allowed by the API quota, 0 for no limit, the calls
+	 * allowed back to back after an idle period, and how many calls may wait
+	 * for the rate limit before new ones fall back to the OUI vendor.
+	 */
+	@Value("${fingerbank.rate-limit.per-second:0}")
+	private double ratePerSecond;
+
+	@Value("${fingerbank.rate-limit.burst:20}")
+	private int rateBurst;
+
+	@Value("${fingerbank.rate-limit.queue-size:100}")
+	private int rateQueueSize;
+
+	/**
+	 * Circuit breaker: the calls kept in the rolling window, how many are
+	 * needed before it may open, the failure rate and p99 latency that open
+	 * it, and how long it stays open before probing.
+	 */
+	@Value("${fingerbank.breaker.window-size:100}")
+	private int breakerWindowSize;
+
+	@Value("${fingerbank.breaker.min-calls:20}")
+	private int breakerMinCalls;
+
+	@Value("${fingerbank.breaker.failure-rate-percent:50}")
+	private int breakerFailureRatePercent;
+
+	@Value("${fingerbank.breaker.slow-call-ms:3000}")
+	private long breakerSlowCallMs;
+
+	@Value("${fingerbank.breaker.open-ms:10000}")
+	private long breakerOpenMs;
+
+	/**
+	 * The read timeout is this multiple of the observed p99, no lower than
+	 * the minimum and no higher than {@code fingerbank.read-timeout-ms}.
+	 */
+	@Value("${fingerbank.adaptive-timeout.factor:2}")
+	private double adaptiveTimeoutFactor;
+
+	@Value("${fingerbank.adaptive-timeout.min-ms:500}")
+	private int adaptiveTimeoutMinMs;
+
+	/**
+	 * Send a second copy of calls slower than the observed p95, at most the
+	 * given share of all upstream calls.
+	 */
+	@Value("${fingerbank.hedge.enabled:false}")
+	private boolean hedgeEnabled;
+
+	@Value("${fingerbank.hedge.budget-percent:5}")
+	private int hedgeBudgetPercent;
+
+	/**
+	 * Tab separated fingerprint database consulted before the API, see
+	 * {@link LocalFingerprints}. Empty to always ask FingerBank.
+	 */
+	@Value("${fingerbank.local-db:}")
+	private String localDbPath;
+
+	@Value("${fingerbank.cache.max-size:10000}")
+	private int cacheMaxSize;
+
+	@Value("${fingerbank.cache.ttl-ms:3600000}")
+	private long cacheTtlMs;
+
+	@Value("${fingerbank.unknown-cache.max-size:2000}")
+	private int unknownCacheMaxSize;
+
+	@Value("${fingerbank.unknown-cache.ttl-ms:300000}")
+	private long unknownCacheTtlMs;
+
+	/**
+	 * Payload fields that make up the cache key, in key order.
+	 */
+	private static final String[] KEY_FIELDS = {"dhcp_fingerprint", "dhcp_vendor", "user_agents", "hostname", "mac"};
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private static final ThreadLocal<ByteArrayOutputStream> PAYLOAD_BUFFER =
+			ThreadLocal.withInitial(() -> new ByteArrayOutputStream(256));
+
+	private Client client;
+	private WebResource webResource;
+	private Semaphore permits;
+	private FingerBankCache cache;
+	private FingerBankCache unknownCache;
+	private LocalFingerprints localDb;
+	private final AtomicLong localHits = new AtomicLong();
+
+	/**
+	 * Lookups currently waiting on FingerBank, by cache key.
+	 */
+	private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	private ThreadPoolExecutor executor;
+	private FingerBankRateLimiter limiter;
+	private FingerBankCircuitBreaker breaker;
+
+	private final ScheduledExecutorService hedgeTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "fingerbank-hedge");
+		t.setDaemon(true);
+		return t;
+	});
+	private final AtomicLong upstreamCalls = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgesWon = new AtomicLong();
+	private final AtomicLong hedgesCancelled = new AtomicLong();
+	private final AtomicLong hedgesSkipped = new AtomicLong();
+
+	@PostConstruct
+	public void init() throws IOException {
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections", String.valueOf(maxConcurrentRequests));
+		}
+		//Timeouts are set per request, client properties would override them
+		ClientConfig config = new DefaultClientConfig();
+		client = Client.create(config);
+		webResource = client.resource(url).queryParam("key", key);
+		permits = new Semaphore(maxConcurrentRequests, true);
+		cache = new FingerBankCache(cacheMaxSize, cacheTtlMs, TimeUnit.MILLISECONDS);
+		unknownCache = new FingerBankCache(unknownCacheMaxSize, unknownCacheTtlMs, TimeUnit.MILLISECONDS);
+		if (!localDbPath.trim().isEmpty()) {
+			localDb = LocalFingerprints.load(Paths.get(localDbPath.trim()));
+			logger.info("Loaded " + localDb.size() + " local fingerprints from " + localDbPath);
+		}
+		AtomicInteger threads = new AtomicInteger();
+		executor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(asyncQueueSize), r -> {
+					Thread t = new Thread(r, "fingerbank-" + threads.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}, (r, e) -> {
+					rejected.incrementAndGet();
+					throw new RejectedExecutionException("Failed : too many pending FingerBank requests");
+				});
+		executor.allowCoreThreadTimeOut(true);
+		breaker = new FingerBankCircuitBreaker(breakerWindowSize, breakerMinCalls, breakerFailureRatePercent,
+				breakerSlowCallMs, breakerOpenMs);
+		limiter = new FingerBankRateLimiter(ratePerSecond, rateBurst, rateQueueSize, executor);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		hedgeTimer.shutdownNow();
+		limiter.shutdown();
+		executor.shutdownNow();
+		client.destroy();
+	}
+
 	public String postDeviceName(EndPoint ep) {
-		//Initialize URL
-		Client client = Client.create();
-		String url = "https://api.fingerbank.org/api/v2/combinations/interrogate?key=83dfe2be31701d8f3e3fd27eb160e84a698e1cb5";
-		WebResource webResource = client.resource(url);
-
-		//convert EP data to JSON
-		JSONObject json = new JSONObject(ep);
-		JSONObject attributeJson = json.getJSONObject("attributes");
-		
-		//create FingerBank JSON payload for significant attributes
-		JSONObject fbjson = FingerBank.createFingerbankPayload(attributeJson);
-		
+		return await(postDeviceNameAsync(ep));
+	}
+
+	/**
+	 * Same as {@link #postDeviceName(EndPoint)}, but the upstream call runs on
+	 * the FingerBank executor. Cached and already running lookups complete
+	 * without taking an executor thread.
+	 *
+	 * @return the device name; completes exceptionally with a
+	 * {@link RejectedExecutionException} when too many lookups are pending.
+	 */
+	public CompletableFuture<String> postDeviceNameAsync(EndPoint ep) {
+		return postDeviceNameAsync(ep, MacAddress.INVALID);
+	}
+
+	/**
+	 * Same as {@link #postDeviceNameAsync(EndPoint)} for a caller that has
+	 * already parsed the endpoint's MAC address.
+	 *
+	 * @param mac the MAC of {@code ep}, or {@link MacAddress#INVALID} to parse
+	 * it when needed.
+	 */
+	public CompletableFuture<String> postDeviceNameAsync(EndPoint ep, long mac) {
+		try {
+			return lookup(ep, mac);
+		} catch (RuntimeException e) {
+			CompletableFuture<String> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	private CompletableFuture<String> lookup(EndPoint ep, long mac) {
+		//create FingerBank payload for significant attributes
+		Map<String, String> fbjson = FingerBank.createFingerbankPayload(ep.getAttributes());
+
+		//Answer locally when the fingerprint is in the local database
+		if (localDb != null) {
+			String local = localDb.match(fbjson);
+			if (local != null) {
+				localHits.incrementAndGet();
+				return CompletableFuture.completedFuture(local);
+			}
+		}
+
+		//Answer from the cache when this fingerprint was seen recently
+		String cacheKey = cacheKey(fbjson, mac);
+		if (cacheKey != null) {
+			String cached = cache.get(cacheKey);
+			if (cached != null) {
+				return CompletableFuture.completedFuture(cached);
+			}
+			if (unknownCache.get(cacheKey) != null) {
+				return CompletableFuture.completedFuture("Unknown");
+			}
+		}
+
+		//Wait for the same lookup if another request already started it
+		CompletableFuture<String> lookup = new CompletableFuture<>();
+		if (cacheKey != null) {
+			CompletableFuture<String> running = inFlight.putIfAbsent(cacheKey, lookup);
+			if (running != null) {
+				coalesced.incrementAndGet();
+				return running;
+			}
+		}
+
+		//Fail fast to the OUI fallback while FingerBank is unhealthy
+		if (breaker.isOpen()) {
+			if (cacheKey != null) {
+				inFlight.remove(cacheKey, lookup);
+			}
+			lookup.completeExceptionally(new RejectedExecutionException("Failed : FingerBank circuit is open"));
+			return lookup;
+		}
+
+		//Endpoints that already have a policy are being re-profiled and can wait
+		boolean isNew = !ep.getAttributes().containsKey(EndPoint.ENDPOINTPOLICY);
+		if (cacheKey != null) {
+			//The result is cached by now, so later requests will not miss
+			lookup.whenComplete((result, error) -> inFlight.remove(cacheKey, lookup));
+		}
+		limiter.execute(() -> complete(lookup, fbjson, cacheKey), lookup::completeExceptionally, isNew);
+		return lookup;
+	}
+
+	private void complete(CompletableFuture<String> lookup, Map<String, String> fbjson, String cacheKey) {
+		AtomicInteger attempts = new AtomicInteger(1);
+		ScheduledFuture<?> hedge = null;
+		long delay = hedgeDelayNanos();
+		if (delay > 0) {
+			hedge = hedgeTimer.schedule(() -> hedge(lookup, fbjson, cacheKey, attempts), delay, TimeUnit.NANOSECONDS);
+		}
+		try {
+			attempt(lookup, fbjson, cacheKey, attempts);
+		} finally {
+			if (hedge != null) {
+				hedge.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Completes the lookup with one upstream call. A failure only fails the
+	 * lookup if no other attempt is still running.
+	 *
+	 * @return true if this attempt answered first.
+	 */
+	private boolean attempt(CompletableFuture<String> lookup, Map<String, String> fbjson, String cacheKey,
+			AtomicInteger attempts) {
+		try {
+			return lookup.complete(interrogate(fbjson, cacheKey));
+		} catch (RuntimeException e) {
+			if (attempts.decrementAndGet() == 0) {
+				lookup.completeExceptionally(e);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @return how long a call may run before it is hedged, or 0 if hedging is
+	 * off or too few calls were seen to know the p95.
+	 */
+	private long hedgeDelayNanos() {
+		if (!hedgeEnabled || breaker.window().count() < breakerMinCalls) {
+			return 0;
+		}
+		return breaker.window().percentile(0.95);
+	}
+
+	/**
+	 * Sends a second copy of a call that is slower than the p95, if the
+	 * budget and the rate limit allow it. Whichever answers first completes
+	 * the lookup; a hedge still queued when the first call answers is
+	 * dropped, one already sent just has its answer ignored.
+	 */
+	private void hedge(CompletableFuture<String> lookup, Map<String, String> fbjson, String cacheKey,
+			AtomicInteger attempts) {
+		if (lookup.isDone()) {
+			return;
+		}
+		if ((hedges.get() + 1) * 100 > hedgeBudgetPercent * upstreamCalls.get() || !limiter.tryAcquire()) {
+			hedgesSkipped.incrementAndGet();
+			return;
+		}
+		hedges.incrementAndGet();
+		attempts.incrementAndGet();
+		try {
+			executor.execute(() -> {
+				if (lookup.isDone()) {
+					hedgesCancelled.incrementAndGet();
+				} else if (attempt(lookup, fbjson, cacheKey, attempts)) {
+					hedgesWon.incrementAndGet();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			hedges.decrementAndGet();
+			hedgesSkipped.incrementAndGet();
+			//The first attempt may have failed meanwhile, leaving the lookup to this one
+			if (attempts.decrementAndGet() == 0) {
+				lookup.completeExceptionally(e);
+			}
+		}
+	}
+
+	private static String await(CompletableFuture<String> lookup) {
+		try {
+			return lookup.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Calls the FingerBank API and caches the answer under {@code cacheKey}
+	 * unless it is null.
+	 */
+	private String interrogate(Map<String, String> fbjson, String cacheKey) {
 		//Call Fingerbank API
-		ClientResponse response = webResource.type("application/json").post(ClientResponse.class,fbjson.toString());
+		try {
+			if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+				throw new RuntimeException("Failed : too many concurrent FingerBank requests");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Failed : interrupted waiting for FingerBank", e);
+		}
+		//Fail fast to the OUI fallback while FingerBank is unhealthy
+		if (!breaker.tryAcquire()) {
+			permits.release();
+			throw new RejectedExecutionException("Failed : FingerBank circuit is open");
+		}
+		upstreamCalls.incrementAndGet();
+		long start = System.nanoTime();
+		boolean failed = true;
+		ClientResponse response = null;
+		try {
+			ClientRequest request = ClientRequest.create().type("application/json")
+					.entity(writePayload(fbjson)).build(webResource.getURI(), "POST");
+			request.getProperties().put(ClientConfig.PROPERTY_CONNECT_TIMEOUT, connectTimeoutMs);
+			request.getProperties().put(ClientConfig.PROPERTY_READ_TIMEOUT,
+					breaker.timeoutMs(adaptiveTimeoutFactor, adaptiveTimeoutMinMs, readTimeoutMs));
+			response = client.handle(request);
+
+			//Read the whole body so the connection goes back to the keep-alive pool
+			String output = response.getEntity(String.class);
 
-		//Check response and return Unknown if status 404
-		if (response.getStatus() != 200) {
-			if (response.getStatus() == 404) {
-				return "Unknown";
+			//Check response and return Unknown if status 404
+			if (response.getStatus() != 200) {
+				if (response.getStatus() == 404) {
+					failed = false;
+					if (cacheKey != null) {
+						unknownCache.put(cacheKey, "Unknown");
+					}
+					return "Unknown";
+				} else {
+					throw new RuntimeException("Failed : HTTP error code : " + response.getStatus());
+				}
 			} else {
-				throw new RuntimeException("Failed : HTTP error code : " + response.getStatus());
+				JSONObject responsejson = new JSONObject(output);
+				String device_name = responsejson.getJSONObject("device").getString("name");
+				failed = false;
+
+				if (cacheKey != null) {
+					cache.put(cacheKey, device_name);
+				}
+				return device_name;
 			}
-		} else {
-			String output = response.getEntity(String.class);
-			JSONObject responsejson = new JSONObject(output);
-			String device_name = responsejson.getJSONObject("device").getString("name");
+		} finally {
+			breaker.record(System.nanoTime() - start, failed);
+			if (response != null) {
+				response.close();
+			}
+			permits.release();
+		}
+	}
+
+	/**
+	 * @return circuit breaker state, upstream failure rate and latency
+	 * percentiles over the rolling window, the current read timeout and
+	 * hedging counters.
+	 */
+	public Map<String, Object> getStatus() {
+		Map<String, Object> status = breaker.status();
+		status.put("readTimeoutMs", breaker.timeoutMs(adaptiveTimeoutFactor, adaptiveTimeoutMinMs, readTimeoutMs));
+		Map<String, Long> hedging = new LinkedHashMap<>();
+		hedging.put("upstreamCalls", upstreamCalls.get());
+		hedging.put("hedges", hedges.get());
+		hedging.put("won", hedgesWon.get());
+		hedging.put("cancelled", hedgesCancelled.get());
+		hedging.put("skipped", hedgesSkipped.get());
+		status.put("hedging", hedging);
+		return status;
+	}
 
-			return device_name;
+	/**
+	 * @return hit, miss and eviction counters of the device name cache and of
+	 * the cache of unknown fingerprints. The latter is only consulted on a
+	 * device name miss. Also the number of requests that waited for an
+	 * identical lookup already in flight instead of calling FingerBank, and
+	 * the number answered from the local fingerprint database. Rate limiter
+	 * queue depths, wait times and shed calls are under "rateLimit".
+	 */
+	public Map<String, Map<String, Long>> getCacheStats() {
+		Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+		stats.put("devices", cache.stats());
+		stats.put("unknown", unknownCache.stats());
+		Map<String, Long> lookups = new LinkedHashMap<>();
+		lookups.put("coalesced", coalesced.get());
+		lookups.put("inFlight", (long) inFlight.size());
+		lookups.put("queued", (long) executor.getQueue().size());
+		lookups.put("rejected", rejected.get());
+		stats.put("lookups", lookups);
+		stats.put("rateLimit", limiter.stats());
+		Map<String, Long> local = new LinkedHashMap<>();
+		local.put("entries", localDb == null ? 0L : localDb.size());
+		local.put("hits", localHits.get());
+		stats.put("local", local);
+		return stats;
+	}
+
+	/**
+	 * Builds the cache key from the payload fields in a fixed order, so that
+	 * payloads differing only in formatting share an entry: fingerprints lose
+	 * their whitespace, host names are compared case-insensitively and MAC
+	 * addresses in their canonical form.
+	 *
+	 * @param mac the parsed MAC of the payload, or {@link MacAddress#INVALID}
+	 * to parse it from the payload.
+	 * @return the key, or null if the payload carries none of the key fields.
+	 */
+	static String cacheKey(Map<String, String> fbjson, long mac) {
+		StringBuilder sb = new StringBuilder(64);
+		boolean found = false;
+		for (int i = 0; i < KEY_FIELDS.length; i++) {
+			sb.append('\u0001');
+			String value = fbjson.get(KEY_FIELDS[i]);
+			if (value == null) {
+				continue;
+			}
+			found = true;
+			value = value.trim();
+			switch (KEY_FIELDS[i]) {
+			case "dhcp_fingerprint":
+				for (int c = 0; c < value.length(); c++) {
+					if (!Character.isWhitespace(value.charAt(c))) {
+						sb.append(value.charAt(c));
+					}
+				}
+				break;
+			case "hostname":
+				sb.append(value.toLowerCase(Locale.ROOT));
+				break;
+			case "mac":
+				long parsed = mac != MacAddress.INVALID ? mac : MacAddress.parse(value);
+				sb.append(parsed == MacAddress.INVALID ? value : MacAddress.toString(parsed));
+				break;
+			default:
+				sb.append(value);
+			}
+		}
+		return found ? sb.toString() : null;
+	}
+
+	/**
+	 * Writes the payload as a JSON object into this thread's reusable buffer,
+	 * so building a request allocates little more than the bytes sent.
+	 */
+	static byte[] writePayload(Map<String, String> fbjson) {
+		ByteArrayOutputStream buffer = PAYLOAD_BUFFER.get();
+		buffer.reset();
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(buffer)) {
+			generator.writeStartObject();
+			for (Map.Entry<String, String> field : fbjson.entrySet()) {
+				generator.writeStringField(field.getKey(), field.getValue());
+			}
+			generator.writeEndObject();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
+		return buffer.toByteArray();
 	}
-	
-	private static JSONObject createFingerbankPayload(JSONObject jsonep) {
-		//Creates new JSON payload converting ISE attributes to Fingerbank attributes.
+
+	static Map<String, String> createFingerbankPayload(Map<String, String> jsonep) {
+		//Creates new payload converting ISE attributes to Fingerbank attributes.
 		//If no significant attributes, just send original EP json attributes
-		JSONObject fingerbankjson = new JSONObject();
-		if (jsonep.has("dhcp-parameter-request-list") || 
-				jsonep.has("dhcp-class-identifier") || 
-				jsonep.has("User-Agent") ||
-				jsonep.has("host-name")) {
+		Map<String, String> fingerbankjson = new LinkedHashMap<>();
+		if (jsonep.containsKey("dhcp-parameter-request-list") || 
+				jsonep.containsKey("dhcp-class-identifier") || 
+				jsonep.containsKey("User-Agent") ||
+				jsonep.containsKey("host-name")) {
 			
-			if (jsonep.has("dhcp-parameter-request-list")) {
-				System.out.println("Converting dhcp-parameter-request-list to dhcp_fingerprint");
-				String value = jsonep.getString("dhcp-parameter-request-list");
+			if (jsonep.containsKey("dhcp-parameter-request-list")) {
+				logger.debug("Converting dhcp-parameter-request-list to dhcp_fingerprint");
+				String value = jsonep.get("dhcp-parameter-request-list");
 				fingerbankjson.put("dhcp_fingerprint",value);
 			} 
-			if (jsonep.has("dhcp-class-identifier")) {
-				System.out.println("Converting dhcp-class-identifier to dhcp_vendor");
-				String value = jsonep.getString("dhcp-class-identifier");
+			if (jsonep.containsKey("dhcp-class-identifier")) {
+				logger.debug("Converting dhcp-class-identifier to dhcp_vendor");
+				String value = jsonep.get("dhcp-class-identifier");
 				fingerbankjson.put("dhcp_vendor",value);
 			}
-			if (jsonep.has("User-Agent")) {
-				System.out.println("Converting User-Agent to user_agents");
-				String value = jsonep.getString("User-Agent");
+			if (jsonep.containsKey("User-Agent")) {
+				logger.debug("Converting User-Agent to user_agents");
+				String value = jsonep.get("User-Agent");
 				fingerbankjson.put("user_agents",value);
 			}
-			if (jsonep.has("host-name")) {
-				System.out.println("Converting host-name to hostname");
-				String value = jsonep.getString("host-name");
+			if (jsonep.containsKey("host-name")) {
+				logger.debug("Converting host-name to hostname");
+				String value = jsonep.get("host-name");
 				fingerbankjson.put("hostname",value);
 			}
 		} else {
-			System.out.println("No significant attributes used by Fingerbank");
-			if (jsonep.has("MACAddress")) {
-				String value = jsonep.getString("MACAddress");
+			logger.debug("No significant attributes used by Fingerbank");
+			if (jsonep.containsKey("MACAddress")) {
+				String value = jsonep.get("MACAddress");
 				fingerbankjson.put("mac", value);
 			} else {
 				return jsonep;
@@ -0,0 +1,123 @@
+package com.cisco.aws;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, expiring cache of FingerBank answers keyed by the normalised
+ * request payload.
+ * <p>
+ * Entries expire {@code ttl} after being stored and the least recently used
+ * entry is evicted once a segment is full. The key space is split into
+ * independently locked LRU segments so concurrent requests rarely contend.
+ */
+class FingerBankCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    FingerBankCache(int maxSize, long ttl, TimeUnit unit) {
+        this.ttlNanos = unit.toNanos(ttl);
+        int perSegment = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * @return the cached answer, or null on a miss or an expired entry.
+     */
+    String get(String key) {
+        Segment segment = segmentFor(key);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            Cached entry = segment.get(key);
+            if (entry != null && now - entry.expiresAt < 0) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if (entry != null) {
+                segment.remove(key);
+                expirations.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    void put(String key, String value) {
+        Segment segment = segmentFor(key);
+        Cached entry = new Cached(value, System.nanoTime() + ttlNanos);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return hit and miss counters, entries evicted to stay within the size
+     * limit, expired entries dropped on lookup, and the current size.
+     */
+    Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        stats.put("size", (long) size());
+        return stats;
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Cached {
+        final String value;
+        final long expiresAt;
+
+        Cached(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<String, Cached> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.cisco.aws;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker around the FingerBank API.
+ * <p>
+ * Closed, it lets every call through and records outcomes in a
+ * {@link LatencyWindow}. Once the window holds enough calls and either the
+ * failure rate or the p99 latency crosses its threshold, it opens and calls
+ * fail fast for a while. After that a single probe call is let through
+ * (half-open): success closes the breaker with a fresh window, failure opens
+ * it again.
+ * <p>
+ * The read timeout follows the upstream as well: a multiple of the observed
+ * p99, so a slowing API is given up on well before the configured maximum.
+ */
+final class FingerBankCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(FingerBankCircuitBreaker.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final LatencyWindow window;
+    private final int minCalls;
+    private final double failureRate;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+    private long opened;
+
+    /**
+     * @param failureRatePercent failed calls in the window that open the breaker.
+     * @param slowCallMs p99 latency that opens the breaker.
+     * @param openMs how long calls fail fast before a probe is let through.
+     */
+    FingerBankCircuitBreaker(int windowSize, int minCalls, int failureRatePercent, long slowCallMs, long openMs) {
+        this.window = new LatencyWindow(windowSize);
+        this.minCalls = Math.max(1, Math.min(minCalls, windowSize));
+        this.failureRate = failureRatePercent / 100.0;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMs);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+    }
+
+    /**
+     * @return true while calls should fail fast. Cheap, takes no probe slot.
+     */
+    synchronized boolean isOpen() {
+        return state == State.OPEN && System.nanoTime() - openedAt < openNanos;
+    }
+
+    /**
+     * Asks to make a call. Every call that is allowed must be followed by
+     * {@link #record(long, boolean)}.
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            transition(State.HALF_OPEN, "probing FingerBank");
+            probing = true;
+            return true;
+        default:
+            if (probing) {
+                return false;
+            }
+            probing = true;
+            return true;
+        }
+    }
+
+    synchronized void record(long nanos, boolean failure) {
+        window.record(nanos, failure);
+        if (state == State.HALF_OPEN) {
+            probing = false;
+            if (failure) {
+                open("probe failed");
+            } else {
+                window.clear();
+                transition(State.CLOSED, "probe succeeded in " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+            }
+        } else if (state == State.CLOSED && window.count() >= minCalls) {
+            if (window.failureRate() >= failureRate) {
+                open(String.format("failure rate %.0f%% over the last %d calls", window.failureRate() * 100, window.count()));
+            } else if (window.percentile(0.99) >= slowCallNanos) {
+                open("p99 latency " + TimeUnit.NANOSECONDS.toMillis(window.percentile(0.99)) + " ms");
+            }
+        }
+    }
+
+    /**
+     * @return {@code factor} times the observed p99, within
+     * {@code [minMs, maxMs]}, or {@code maxMs} until enough calls were seen.
+     */
+    int timeoutMs(double factor, int minMs, int maxMs) {
+        if (window.count() < minCalls) {
+            return maxMs;
+        }
+        long adaptive = (long) (factor * TimeUnit.NANOSECONDS.toMillis(window.percentile(0.99)));
+        return (int) Math.max(minMs, Math.min(maxMs, adaptive));
+    }
+
+    /**
+     * @return the latency window, shared with whoever else needs percentiles.
+     */
+    LatencyWindow window() {
+        return window;
+    }
+
+    private void open(String reason) {
+        openedAt = System.nanoTime();
+        opened++;
+        transition(State.OPEN, reason);
+    }
+
+    private void transition(State to, String reason) {
+        logger.warn("FingerBank circuit " + state + " -> " + to + ": " + reason);
+        state = to;
+    }
+
+    synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.put("timesOpened", opened);
+        status.put("calls", window.count());
+        status.put("failureRatePercent", Math.round(window.failureRate() * 100));
+        status.put("p50Ms", TimeUnit.NANOSECONDS.toMillis(window.percentile(0.50)));
+        status.put("p95Ms", TimeUnit.NANOSECONDS.toMillis(window.percentile(0.95)));
+        status.put("p99Ms", TimeUnit.NANOSECONDS.toMillis(window.percentile(0.99)));
+        return status;
+    }
+}
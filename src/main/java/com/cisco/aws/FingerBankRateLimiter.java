@@ -0,0 +1,192 @@
+package com.cisco.aws;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Token bucket in front of the FingerBank executor, keeping upstream calls
+ * within the API quota.
+ * <p>
+ * Calls run straight away while tokens are left. Otherwise they wait in one
+ * of two bounded queues, lookups for new endpoints ahead of re-profiling,
+ * and a single timer thread hands them to the executor as tokens refill.
+ * Waiting calls hold no thread. When the queues are full a new call is shed
+ * at once; a priority call sheds the most recently queued re-profiling call
+ * instead, if there is one.
+ */
+final class FingerBankRateLimiter {
+
+    private final double permitsPerNano;
+    private final double burst;
+    private final int queueSize;
+    private final Executor executor;
+
+    private final ArrayDeque<Pending> priority = new ArrayDeque<>();
+    private final ArrayDeque<Pending> reprofile = new ArrayDeque<>();
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private boolean drainScheduled;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "fingerbank-limiter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong shed = new AtomicLong();
+    private final AtomicLong waited = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param permitsPerSecond sustained call rate, 0 or less for no limit.
+     * @param burst calls allowed back to back after an idle period.
+     * @param queueSize calls that may wait for a token, both priorities together.
+     */
+    FingerBankRateLimiter(double permitsPerSecond, int burst, int queueSize, Executor executor) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+        this.queueSize = queueSize;
+        this.executor = executor;
+        this.tokens = this.burst;
+    }
+
+    /**
+     * Runs {@code task} on the executor once a token is available.
+     *
+     * @param onShed called instead if the task is dropped, now or while waiting.
+     * @param isPriority false for re-profiling lookups.
+     */
+    void execute(Runnable task, Consumer<RejectedExecutionException> onShed, boolean isPriority) {
+        if (permitsPerNano <= 0) {
+            dispatch(task, onShed);
+            return;
+        }
+        Pending evicted = null;
+        synchronized (this) {
+            refill();
+            if (priority.isEmpty() && reprofile.isEmpty() && tokens >= 1) {
+                tokens--;
+            } else if (priority.size() + reprofile.size() < queueSize) {
+                (isPriority ? priority : reprofile).addLast(new Pending(task, onShed));
+                scheduleDrain();
+                return;
+            } else if (isPriority && !reprofile.isEmpty()) {
+                evicted = reprofile.pollLast();
+                priority.addLast(new Pending(task, onShed));
+            } else {
+                evicted = new Pending(task, onShed);
+            }
+        }
+        if (evicted == null) {
+            dispatch(task, onShed);
+        } else {
+            shed.incrementAndGet();
+            evicted.onShed.accept(new RejectedExecutionException("Failed : FingerBank rate limit queue is full"));
+        }
+    }
+
+    /**
+     * Takes a token if one is free and nobody is waiting for it, without
+     * queueing. For optional calls such as hedges.
+     */
+    boolean tryAcquire() {
+        if (permitsPerNano <= 0) {
+            return true;
+        }
+        synchronized (this) {
+            refill();
+            if (priority.isEmpty() && reprofile.isEmpty() && tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private void dispatch(Runnable task, Consumer<RejectedExecutionException> onShed) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            onShed.accept(e);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * permitsPerNano);
+        refilledAt = now;
+    }
+
+    private void scheduleDrain() {
+        if (!drainScheduled) {
+            drainScheduled = true;
+            long delay = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerNano);
+            timer.schedule(this::drain, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Pending next;
+            synchronized (this) {
+                drainScheduled = false;
+                refill();
+                if (tokens < 1 || (priority.isEmpty() && reprofile.isEmpty())) {
+                    if (!priority.isEmpty() || !reprofile.isEmpty()) {
+                        scheduleDrain();
+                    }
+                    return;
+                }
+                tokens--;
+                next = priority.isEmpty() ? reprofile.pollFirst() : priority.pollFirst();
+            }
+            long wait = System.nanoTime() - next.queuedAt;
+            waited.incrementAndGet();
+            waitNanos.addAndGet(wait);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+            dispatch(next.task, next.onShed);
+        }
+    }
+
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * @return queue depths, shed count and the mean and longest time calls
+     * waited for a token.
+     */
+    Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("queuedNew", (long) priority.size());
+            stats.put("queuedReprofile", (long) reprofile.size());
+        }
+        long count = waited.get();
+        stats.put("shed", shed.get());
+        stats.put("waited", count);
+        stats.put("waitAvgMs", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.get() / count));
+        stats.put("waitMaxMs", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        return stats;
+    }
+
+    private static final class Pending {
+        final Runnable task;
+        final Consumer<RejectedExecutionException> onShed;
+        final long queuedAt = System.nanoTime();
+
+        Pending(Runnable task, Consumer<RejectedExecutionException> onShed) {
+            this.task = task;
+            this.onShed = onShed;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.cisco.aws;
+
+/**
+ * Parsing and formatting of IPv4 and IPv6 addresses held as primitives: an
+ * IPv4 address in the low 32 bits of a long, an IPv6 address as two longs,
+ * the high and low 64 bits.
+ * <p>
+ * Only literal addresses are accepted, nothing is ever resolved, unlike
+ * {@link java.net.InetAddress#getByName(String)}. IPv6 accepts the
+ * {@code ::} shorthand, an embedded dotted quad in the last 32 bits and a
+ * {@code %zone} suffix, which is ignored.
+ */
+public final class IpAddress {
+
+    /**
+     * Returned by {@link #parseIpv4(CharSequence)} for malformed input.
+     */
+    public static final long INVALID = -1L;
+
+    private IpAddress() {
+    }
+
+    /**
+     * @return the address, or {@link #INVALID} if null or malformed.
+     */
+    public static long parseIpv4(CharSequence ip) {
+        return ip == null ? INVALID : parseIpv4(ip, 0, ip.length());
+    }
+
+    private static long parseIpv4(CharSequence ip, int from, int to) {
+        while (from < to && Character.isWhitespace(ip.charAt(from))) {
+            from++;
+        }
+        while (to > from && Character.isWhitespace(ip.charAt(to - 1))) {
+            to--;
+        }
+        long value = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = from; i <= to; i++) {
+            char c = i < to ? ip.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                if (octet == 0 || (octet = Math.max(octet, 0) * 10 + (c - '0')) > 255) {
+                    // No leading zeros, they read as octal elsewhere
+                    return INVALID;
+                }
+            } else if (c == '.' && octet >= 0 && ++octets <= 4) {
+                value = value << 8 | octet;
+                octet = -1;
+            } else {
+                return INVALID;
+            }
+        }
+        return octets == 4 ? value : INVALID;
+    }
+
+    /**
+     * Parses an IPv6 address into {@code address[0]} (high 64 bits) and
+     * {@code address[1]} (low 64 bits).
+     *
+     * @return false if null or malformed, {@code address} is then undefined.
+     */
+    public static boolean parseIpv6(CharSequence ip, long[] address) {
+        if (ip == null) {
+            return false;
+        }
+        int from = 0;
+        int to = ip.length();
+        while (from < to && Character.isWhitespace(ip.charAt(from))) {
+            from++;
+        }
+        while (to > from && Character.isWhitespace(ip.charAt(to - 1))) {
+            to--;
+        }
+        for (int i = from; i < to; i++) {
+            if (ip.charAt(i) == '%') {
+                to = i;
+            }
+        }
+        int[] groups = new int[8];
+        int count = 0;
+        int gap = -1;
+        int i = from;
+        if (to - from >= 2 && ip.charAt(from) == ':' && ip.charAt(from + 1) == ':') {
+            gap = 0;
+            i += 2;
+        }
+        while (i < to) {
+            int start = i;
+            int group = 0;
+            while (i < to && i - start < 5 && nibble(ip.charAt(i)) >= 0) {
+                group = group << 4 | nibble(ip.charAt(i));
+                i++;
+            }
+            if (i < to && ip.charAt(i) == '.') {
+                // Dotted quad in the last 32 bits
+                long ipv4 = parseIpv4(ip, start, to);
+                if (ipv4 == INVALID || count > 6) {
+                    return false;
+                }
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) ipv4 & 0xFFFF;
+                i = to;
+                break;
+            }
+            if (i == start || i - start > 4 || count == 8) {
+                return false;
+            }
+            groups[count++] = group;
+            if (i < to) {
+                if (ip.charAt(i) != ':' || ++i == to) {
+                    return false;
+                }
+                if (ip.charAt(i) == ':') {
+                    if (gap >= 0) {
+                        return false;
+                    }
+                    gap = count;
+                    i++;
+                }
+            }
+        }
+        if (gap < 0 ? count != 8 : count > 7) {
+            return false;
+        }
+        if (gap >= 0) {
+            int shift = 8 - count;
+            System.arraycopy(groups, gap, groups, gap + shift, count - gap);
+            for (int g = gap; g < gap + shift; g++) {
+                groups[g] = 0;
+            }
+        }
+        long high = 0;
+        long low = 0;
+        for (int g = 0; g < 4; g++) {
+            high = high << 16 | groups[g];
+            low = low << 16 | groups[g + 4];
+        }
+        address[0] = high;
+        address[1] = low;
+        return true;
+    }
+
+    private static int nibble(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true for {@code ::ffff:a.b.c.d}, an IPv4 address written as
+     * IPv6.
+     */
+    public static boolean isIpv4Mapped(long high, long low) {
+        return high == 0 && (low >>> 32) == 0xFFFF;
+    }
+
+    /**
+     * @return the dotted quad form.
+     */
+    public static String ipv4ToString(long ip) {
+        return ((ip >>> 24) & 0xFF) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+
+    /**
+     * @return the RFC 5952 form: lower case, no leading zeros, the longest
+     * run of two or more zero groups shortened to {@code ::}.
+     */
+    public static String ipv6ToString(long high, long low) {
+        int[] groups = new int[8];
+        for (int g = 0; g < 4; g++) {
+            groups[g] = (int) (high >>> (48 - g * 16)) & 0xFFFF;
+            groups[g + 4] = (int) (low >>> (48 - g * 16)) & 0xFFFF;
+        }
+        int gap = -1;
+        int gapLength = 1;
+        for (int g = 0; g < 8; ) {
+            int end = g;
+            while (end < 8 && groups[end] == 0) {
+                end++;
+            }
+            if (end - g > gapLength) {
+                gap = g;
+                gapLength = end - g;
+            }
+            g = Math.max(end, g + 1);
+        }
+        StringBuilder text = new StringBuilder(39);
+        for (int g = 0; g < 8; g++) {
+            if (g == gap) {
+                text.append("::");
+                g += gapLength - 1;
+            } else {
+                if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+                    text.append(':');
+                }
+                text.append(Integer.toHexString(groups[g]));
+            }
+        }
+        return text.toString();
+    }
+}
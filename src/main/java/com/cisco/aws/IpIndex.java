@@ -0,0 +1,225 @@
+package com.cisco.aws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Reverse index from IP address to the MACs of the endpoints holding it, in
+ * {@link EndPoint#ENDPOINTIP}, the {@link EndPoint#getIpAttrs() IP attributes},
+ * {@link EndPoint#ENDPOINTIPV6} or {@link EndPoint#getIpv6Addresses()}.
+ * <p>
+ * IPv4 addresses are keyed by their 32-bit value and IPv6 addresses by their
+ * two 64-bit halves, each in a skip list ordered as unsigned numbers, so a
+ * CIDR block is a contiguous key range. IPv4-mapped IPv6 addresses are
+ * indexed as IPv4. Several endpoints can hold the same address, e.g. after a
+ * lease moved, so each address maps to a {@link MacSet}.
+ * <p>
+ * Maintained by the {@link EndPointRegistry} from the addresses an endpoint
+ * held before and after each change. Addresses change rarely next to how
+ * often they are looked up, so changes are serialised by the index monitor
+ * while lookups and scans take no lock.
+ */
+final class IpIndex {
+
+    private final ConcurrentSkipListMap<Integer, MacSet> ipv4 = new ConcurrentSkipListMap<>(Integer::compareUnsigned);
+    private final ConcurrentSkipListMap<Ipv6, MacSet> ipv6 = new ConcurrentSkipListMap<>();
+
+    /**
+     * @return the distinct addresses {@code endPoint} holds, as index keys;
+     * empty for no endpoint. Malformed values are skipped.
+     */
+    static List<Object> addresses(EndPoint endPoint) {
+        List<Object> addresses = new ArrayList<>(2);
+        if (endPoint == null) {
+            return addresses;
+        }
+        Map<String, String> attributes = endPoint.getAttributes();
+        add(addresses, attributes.get(EndPoint.ENDPOINTIP));
+        for (String name : EndPoint.getIpAttrs()) {
+            add(addresses, attributes.get(name));
+        }
+        String list = attributes.get(EndPoint.ENDPOINTIPV6);
+        if (list != null) {
+            for (String ip : list.split(",")) {
+                add(addresses, ip);
+            }
+        }
+        if (endPoint.getIpv6Addresses() != null) {
+            for (String ip : endPoint.getIpv6Addresses()) {
+                add(addresses, ip);
+            }
+        }
+        return addresses;
+    }
+
+    private static void add(List<Object> addresses, String ip) {
+        Object key = key(ip);
+        if (key != null && !addresses.contains(key)) {
+            addresses.add(key);
+        }
+    }
+
+    /**
+     * @return the index key for an address, null if malformed.
+     */
+    private static Object key(String ip) {
+        long v4 = IpAddress.parseIpv4(ip);
+        if (v4 != IpAddress.INVALID) {
+            return (int) v4;
+        }
+        long[] v6 = new long[2];
+        if (!IpAddress.parseIpv6(ip, v6)) {
+            return null;
+        }
+        if (IpAddress.isIpv4Mapped(v6[0], v6[1])) {
+            return (int) v6[1];
+        }
+        return new Ipv6(v6[0], v6[1]);
+    }
+
+    /**
+     * Moves {@code mac} from the addresses it no longer holds to the ones it
+     * newly holds.
+     */
+    synchronized void update(long mac, List<Object> before, List<Object> after) {
+        for (Object address : before) {
+            if (!after.contains(address)) {
+                Map<Object, MacSet> index = index(address);
+                MacSet macs = index.get(address);
+                if (macs != null) {
+                    macs.remove(mac);
+                    if (macs.isEmpty()) {
+                        index.remove(address);
+                    }
+                }
+            }
+        }
+        for (Object address : after) {
+            if (!before.contains(address)) {
+                Map<Object, MacSet> index = index(address);
+                MacSet macs = index.get(address);
+                if (macs == null) {
+                    macs = new MacSet();
+                    index.put(address, macs);
+                }
+                macs.add(mac);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object, MacSet> index(Object address) {
+        return (Map<Object, MacSet>) (Map<?, MacSet>) (address instanceof Integer ? ipv4 : ipv6);
+    }
+
+    /**
+     * @return the MACs holding {@code ip}, empty if none do.
+     * @throws IllegalArgumentException if {@code ip} is not an address.
+     */
+    long[] lookup(String ip) {
+        Object key = key(ip);
+        if (key == null) {
+            throw new IllegalArgumentException("Not an IP address: " + ip);
+        }
+        MacSet macs = index(key).get(key);
+        return macs == null ? new long[0] : macs.toArray();
+    }
+
+    /**
+     * Lists the addresses inside a CIDR block, in address order.
+     *
+     * @param cidr e.g. {@code 10.1.0.0/16} or {@code 2001:db8::/32}; a bare
+     * address is a block of one.
+     * @param addresses receives at most {@code limit} addresses with their
+     * MACs.
+     * @return the number of addresses in the block.
+     * @throws IllegalArgumentException if {@code cidr} is malformed.
+     */
+    long range(String cidr, int limit, Map<String, long[]> addresses) {
+        int slash = cidr.indexOf('/');
+        String ip = slash < 0 ? cidr : cidr.substring(0, slash);
+        Object key = key(ip);
+        int max = key instanceof Integer ? 32 : 128;
+        int prefix = max;
+        if (key != null && slash >= 0) {
+            try {
+                prefix = Integer.parseInt(cidr.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                prefix = -1;
+            }
+            if (key instanceof Integer && IpAddress.parseIpv4(ip) == IpAddress.INVALID) {
+                // An IPv4-mapped block, the prefix counts the 96 mapping bits
+                prefix -= 96;
+            }
+        }
+        if (key == null || prefix < 0 || prefix > max) {
+            throw new IllegalArgumentException("Not a CIDR block: " + cidr);
+        }
+
+        ConcurrentNavigableMap<?, MacSet> block;
+        if (key instanceof Integer) {
+            long mask = prefix == 0 ? 0 : 0xFFFFFFFFL << (32 - prefix) & 0xFFFFFFFFL;
+            long first = ((Integer) key & 0xFFFFFFFFL) & mask;
+            block = ipv4.subMap((int) first, true, (int) (first | ~mask), true);
+        } else {
+            Ipv6 address = (Ipv6) key;
+            long highMask = prefix >= 64 ? -1L : prefix == 0 ? 0 : -1L << (64 - prefix);
+            long lowMask = prefix <= 64 ? 0 : prefix == 128 ? -1L : -1L << (128 - prefix);
+            Ipv6 first = new Ipv6(address.high & highMask, address.low & lowMask);
+            Ipv6 last = new Ipv6(first.high | ~highMask, first.low | ~lowMask);
+            block = ipv6.subMap(first, true, last, true);
+        }
+
+        long count = 0;
+        for (Map.Entry<?, MacSet> entry : block.entrySet()) {
+            if (count++ < limit) {
+                Object address = entry.getKey();
+                addresses.put(address instanceof Integer
+                        ? IpAddress.ipv4ToString((Integer) address & 0xFFFFFFFFL)
+                        : address.toString(), entry.getValue().toArray());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of IPv4 and IPv6 addresses indexed.
+     */
+    long[] size() {
+        return new long[] {ipv4.size(), ipv6.size()};
+    }
+
+    private static final class Ipv6 implements Comparable<Ipv6> {
+        final long high;
+        final long low;
+
+        Ipv6(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public int compareTo(Ipv6 other) {
+            int c = Long.compareUnsigned(high, other.high);
+            return c != 0 ? c : Long.compareUnsigned(low, other.low);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ipv6 && ((Ipv6) o).high == high && ((Ipv6) o).low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high) * 31 + Long.hashCode(low);
+        }
+
+        @Override
+        public String toString() {
+            return IpAddress.ipv6ToString(high, low);
+        }
+    }
+}
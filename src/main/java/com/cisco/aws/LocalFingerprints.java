@@ -0,0 +1,256 @@
+package com.cisco.aws;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Local fingerprint database, matched against the FingerBank payload before
+ * the remote API is called.
+ * <p>
+ * The database is a tab separated file of {@code type pattern device} lines;
+ * blank lines and lines starting with {@code #} are ignored. Types:
+ * <ul>
+ * <li>{@code dhcp_fingerprint}: the option 55 list, matched exactly after
+ * removing whitespace.</li>
+ * <li>{@code dhcp_vendor}: a prefix of the DHCP vendor class id.</li>
+ * <li>{@code user_agent}: a run of consecutive tokens of the user agent,
+ * where tokens are the runs of letters, digits, dots and underscores. The
+ * pattern is split into tokens the same way, so {@code Dalvik/2.1.0} and
+ * {@code iPhone OS} match wherever those tokens follow each other; a pattern
+ * without any token is rejected.</li>
+ * <li>{@code hostname}: a prefix of the host name.</li>
+ * </ul>
+ * Everything but fingerprints is compared case-insensitively. Prefixes are
+ * hashed per length and probed longest first, the same way {@link OuiIndex}
+ * resolves MAC prefixes. User agent patterns are hashed by their first token.
+ * A DHCP fingerprint is the strongest evidence, followed by the vendor class
+ * id, the user agent and the host name; among several matching user agent
+ * patterns the earliest line wins.
+ */
+final class LocalFingerprints {
+
+    private final Map<String, String> fingerprints = new HashMap<>();
+    private final PrefixTable vendors = new PrefixTable();
+    /**
+     * User agent patterns by their first token, in file order.
+     */
+    private final Map<String, List<Token>> userAgents = new HashMap<>();
+    private final PrefixTable hostnames = new PrefixTable();
+    private int size;
+
+    private LocalFingerprints() {
+    }
+
+    static LocalFingerprints load(Path file) throws IOException {
+        LocalFingerprints db = new LocalFingerprints();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length != 3 || fields[1].trim().isEmpty() || fields[2].trim().isEmpty()) {
+                    throw new IOException(file + ":" + number + ": expected type, pattern and device separated by tabs");
+                }
+                db.add(fields[0].trim(), fields[1].trim(), fields[2].trim(), number, file);
+            }
+        }
+        db.vendors.seal();
+        db.hostnames.seal();
+        return db;
+    }
+
+    private void add(String type, String pattern, String device, int line, Path file) throws IOException {
+        switch (type) {
+        case "dhcp_fingerprint":
+            fingerprints.putIfAbsent(stripWhitespace(pattern), device);
+            break;
+        case "dhcp_vendor":
+            vendors.add(pattern.toLowerCase(Locale.ROOT), device);
+            break;
+        case "user_agent":
+            List<String> tokens = tokens(pattern.toLowerCase(Locale.ROOT));
+            if (tokens.isEmpty()) {
+                throw new IOException(file + ":" + line + ": user agent pattern " + pattern
+                        + " has no letters, digits, dots or underscores");
+            }
+            String[] rest = tokens.subList(1, tokens.size()).toArray(new String[0]);
+            userAgents.computeIfAbsent(tokens.get(0), first -> new ArrayList<>(1)).add(new Token(rest, device, line));
+            break;
+        case "hostname":
+            hostnames.add(pattern.toLowerCase(Locale.ROOT), device);
+            break;
+        default:
+            throw new IOException(file + ":" + line + ": unknown type " + type);
+        }
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param fbjson a payload built by {@code FingerBank.createFingerbankPayload}.
+     * @return the device name, or null if nothing in the database matches.
+     */
+    String match(Map<String, String> fbjson) {
+        String value = fbjson.get("dhcp_fingerprint");
+        if (value != null) {
+            String device = fingerprints.get(stripWhitespace(value));
+            if (device != null) {
+                return device;
+            }
+        }
+        value = fbjson.get("dhcp_vendor");
+        if (value != null) {
+            String device = vendors.longestPrefix(value.trim().toLowerCase(Locale.ROOT));
+            if (device != null) {
+                return device;
+            }
+        }
+        value = fbjson.get("user_agents");
+        if (value != null) {
+            String device = matchUserAgent(value.toLowerCase(Locale.ROOT));
+            if (device != null) {
+                return device;
+            }
+        }
+        value = fbjson.get("hostname");
+        if (value != null) {
+            return hostnames.longestPrefix(value.trim().toLowerCase(Locale.ROOT));
+        }
+        return null;
+    }
+
+    private String matchUserAgent(String ua) {
+        List<String> tokens = tokens(ua);
+        Token best = null;
+        for (int i = 0; i < tokens.size(); i++) {
+            List<Token> candidates = userAgents.get(tokens.get(i));
+            if (candidates == null) {
+                continue;
+            }
+            for (Token token : candidates) {
+                if (best != null && token.line >= best.line) {
+                    break;
+                }
+                if (token.follows(tokens, i + 1)) {
+                    best = token;
+                }
+            }
+        }
+        return best == null ? null : best.device;
+    }
+
+    /**
+     * @return the runs of letters, digits, dots and underscores in
+     * {@code value}.
+     */
+    private static List<String> tokens(String value) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= value.length(); i++) {
+            char c = i < value.length() ? value.charAt(i) : ' ';
+            boolean tokenChar = Character.isLetterOrDigit(c) || c == '.' || c == '_';
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                tokens.add(value.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static String stripWhitespace(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isWhitespace(value.charAt(i))) {
+                sb.append(value.charAt(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class Token {
+        /**
+         * Tokens of the pattern after the first one.
+         */
+        final String[] rest;
+        final String device;
+        final int line;
+
+        Token(String[] rest, String device, int line) {
+            this.rest = rest;
+            this.device = device;
+            this.line = line;
+        }
+
+        /**
+         * @return true if {@code tokens} continue with the rest of the
+         * pattern at {@code from}.
+         */
+        boolean follows(List<String> tokens, int from) {
+            if (from + rest.length > tokens.size()) {
+                return false;
+            }
+            for (int i = 0; i < rest.length; i++) {
+                if (!rest[i].equals(tokens.get(from + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Prefixes hashed together with the distinct prefix lengths, longest
+     * first, so a lookup costs one probe per length in use.
+     */
+    private static final class PrefixTable {
+        private final Map<String, String> prefixes = new HashMap<>();
+        private final TreeSet<Integer> distinct = new TreeSet<>();
+        private int[] lengths = new int[0];
+
+        void add(String prefix, String device) {
+            if (prefixes.putIfAbsent(prefix, device) == null) {
+                distinct.add(prefix.length());
+            }
+        }
+
+        void seal() {
+            lengths = new int[distinct.size()];
+            int i = lengths.length;
+            for (int length : distinct) {
+                lengths[--i] = length;
+            }
+            distinct.clear();
+        }
+
+        String longestPrefix(String value) {
+            for (int length : lengths) {
+                if (length > value.length()) {
+                    continue;
+                }
+                String device = prefixes.get(value.substring(0, length));
+                if (device != null) {
+                    return device;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.cisco.aws;
+
+/**
+ * 48-bit MAC address held in the low bits of a long.
+ * <p>
+ * The static methods work on the raw long so hot paths can parse an address
+ * once and pass it around without creating objects. Accepted notations:
+ * <ul>
+ * <li>{@code aa:bb:cc:dd:ee:ff}</li>
+ * <li>{@code aa-bb-cc-dd-ee-ff}</li>
+ * <li>{@code aabb.ccdd.eeff} (Cisco)</li>
+ * <li>{@code aabbccddeeff}</li>
+ * </ul>
+ * Hex digits may be upper or lower case, surrounding whitespace is ignored.
+ */
+public final class MacAddress implements Comparable<MacAddress> {
+
+    /**
+     * Returned by the parse methods for malformed input.
+     */
+    public static final long INVALID = -1L;
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final long value;
+
+    private MacAddress(long value) {
+        this.value = value;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the address is malformed.
+     */
+    public static MacAddress valueOf(String mac) {
+        long value = parse(mac);
+        if (value == INVALID) {
+            throw new IllegalArgumentException("Invalid MAC address: " + mac);
+        }
+        return new MacAddress(value);
+    }
+
+    public static MacAddress valueOf(long value) {
+        if ((value & ~0xFFFFFFFFFFFFL) != 0) {
+            throw new IllegalArgumentException("Not a 48-bit MAC address: " + value);
+        }
+        return new MacAddress(value);
+    }
+
+    /**
+     * @return the address, or {@link #INVALID} if null or malformed.
+     */
+    public static long parse(CharSequence mac) {
+        return mac == null ? INVALID : parse(mac, null, 0, mac.length());
+    }
+
+    /**
+     * Parses an address held in a character buffer, e.g. straight out of a
+     * streaming parser.
+     *
+     * @return the address, or {@link #INVALID} if malformed.
+     */
+    public static long parse(char[] mac, int offset, int length) {
+        return parse(null, mac, offset, offset + length);
+    }
+
+    /**
+     * Reads from {@code text} when set, otherwise from {@code chars}.
+     */
+    private static long parse(CharSequence text, char[] chars, int from, int to) {
+        while (from < to && Character.isWhitespace(text != null ? text.charAt(from) : chars[from])) {
+            from++;
+        }
+        while (to > from && Character.isWhitespace(text != null ? text.charAt(to - 1) : chars[to - 1])) {
+            to--;
+        }
+        long value = 0;
+        int digits = 0;
+        int group = 0;
+        char separator = 0;
+        for (int i = from; i < to; i++) {
+            char c = text != null ? text.charAt(i) : chars[i];
+            int nibble = nibble(c);
+            if (nibble >= 0) {
+                if (++digits > 12) {
+                    return INVALID;
+                }
+                value = value << 4 | nibble;
+                group++;
+                continue;
+            }
+            if (separator == 0) {
+                if (c != ':' && c != '-' && c != '.') {
+                    return INVALID;
+                }
+                separator = c;
+            } else if (c != separator) {
+                return INVALID;
+            }
+            if (group != (separator == '.' ? 4 : 2)) {
+                return INVALID;
+            }
+            group = 0;
+        }
+        if (digits != 12 || (separator != 0 && group != (separator == '.' ? 4 : 2))) {
+            return INVALID;
+        }
+        return value;
+    }
+
+    private static int nibble(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the first three octets (the MA-L prefix) in the low 24 bits.
+     */
+    public static int oui(long mac) {
+        return (int) (mac >>> 24);
+    }
+
+    /**
+     * @return true for group addresses (I/G bit of the first octet set).
+     */
+    public static boolean isMulticast(long mac) {
+        return (mac & 0x010000000000L) != 0;
+    }
+
+    /**
+     * @return true for locally administered, e.g. randomized, addresses (U/L
+     * bit of the first octet set). Their prefix is not an IEEE assignment.
+     */
+    public static boolean isLocallyAdministered(long mac) {
+        return (mac & 0x020000000000L) != 0;
+    }
+
+    /**
+     * @return the address mixed over all 64 bits, for hash tables keyed by the
+     * raw long. Vendor prefixes cluster, so the address alone hashes poorly.
+     */
+    public static long hash(long mac) {
+        long h = mac;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return the canonical {@code AA:BB:CC:DD:EE:FF} form.
+     */
+    public static String toString(long mac) {
+        char[] text = new char[17];
+        for (int octet = 0; octet < 6; octet++) {
+            int b = (int) (mac >>> (40 - octet * 8)) & 0xFF;
+            text[octet * 3] = HEX[b >>> 4];
+            text[octet * 3 + 1] = HEX[b & 0xF];
+            if (octet < 5) {
+                text[octet * 3 + 2] = ':';
+            }
+        }
+        return new String(text);
+    }
+
+    public long toLong() {
+        return value;
+    }
+
+    public int oui() {
+        return oui(value);
+    }
+
+    public boolean isMulticast() {
+        return isMulticast(value);
+    }
+
+    public boolean isLocallyAdministered() {
+        return isLocallyAdministered(value);
+    }
+
+    @Override
+    public int compareTo(MacAddress other) {
+        return Long.compare(value, other.value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MacAddress && ((MacAddress) o).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return toString(value);
+    }
+}
@@ -0,0 +1,83 @@
+package com.cisco.aws;
+
+/**
+ * Thread-safe set of 48-bit MAC addresses held as primitive longs.
+ * <p>
+ * A {@link MacTables} linear probing table like the {@link EndPointRegistry}
+ * shards, without the values: about 16 bytes per address instead of a boxed
+ * {@code Long} and a hash map node. Small sets start at two slots, since most values of an
+ * attribute such as a host name are shared by one endpoint only.
+ */
+final class MacSet {
+
+    private long[] keys;
+    private int size;
+
+    MacSet() {
+        this(2);
+    }
+
+    MacSet(int capacity) {
+        keys = MacTables.newKeys(MacTables.tableLength(capacity));
+    }
+
+    /**
+     * @return true if the address was not in the set.
+     */
+    synchronized boolean add(long mac) {
+        int i = slot(mac);
+        if (keys[i] == mac) {
+            return false;
+        }
+        keys[i] = mac;
+        if (MacTables.isOverloaded(keys, ++size)) {
+            long[] old = keys;
+            keys = MacTables.newKeys(old.length << 1);
+            MacTables.rehash(old, null, keys, null);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the address was in the set.
+     */
+    synchronized boolean remove(long mac) {
+        int i = slot(mac);
+        if (keys[i] != mac) {
+            return false;
+        }
+        MacTables.remove(keys, null, i);
+        size--;
+        return true;
+    }
+
+    synchronized boolean contains(long mac) {
+        return keys[slot(mac)] == mac;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the addresses, in no particular order.
+     */
+    synchronized long[] toArray() {
+        long[] macs = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != MacTables.FREE) {
+                macs[n++] = key;
+            }
+        }
+        return macs;
+    }
+
+    private int slot(long mac) {
+        return MacTables.slot(keys, mac, MacAddress.hash(mac));
+    }
+}
@@ -0,0 +1,106 @@
+package com.cisco.aws;
+
+import java.util.Arrays;
+
+/**
+ * Linear probing over a power-of-two array of primitive MAC keys, shared by
+ * {@link MacSet} and the {@link EndPointRegistry} shards. Values, where there
+ * are any, live in a parallel array moved along with the keys.
+ * <p>
+ * Removal shifts later entries of the probe run back into the gap, so no
+ * tombstones are needed and lookups never scan past the run of the key.
+ * Callers hold their own lock.
+ */
+final class MacTables {
+
+    /**
+     * Marks a free slot. Never a valid key, MACs only use the low 48 bits.
+     */
+    static final long FREE = MacAddress.INVALID;
+
+    static final float LOAD_FACTOR = 0.75f;
+
+    private MacTables() {
+    }
+
+    /**
+     * @return the power-of-two table length holding {@code entries} below the
+     * load factor, at least 2.
+     */
+    static int tableLength(int entries) {
+        return Integer.highestOneBit(Math.max(2, (int) (entries / LOAD_FACTOR)) - 1) << 1;
+    }
+
+    /**
+     * @return an empty key table of {@code length} slots.
+     */
+    static long[] newKeys(int length) {
+        long[] keys = new long[length];
+        Arrays.fill(keys, FREE);
+        return keys;
+    }
+
+    /**
+     * @return true once {@code size} entries exceed the load factor.
+     */
+    static boolean isOverloaded(long[] keys, int size) {
+        return size > keys.length * LOAD_FACTOR;
+    }
+
+    /**
+     * @param hash {@link MacAddress#hash(long)} of {@code mac}.
+     * @return the slot holding {@code mac}, or the free slot ending its probe
+     * run.
+     */
+    static int slot(long[] keys, long mac, long hash) {
+        int mask = keys.length - 1;
+        int i = (int) hash & mask;
+        while (keys[i] != FREE && keys[i] != mac) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Frees slot {@code i}, which must be in use, and closes the gap.
+     *
+     * @param values the parallel values, or null if there are none.
+     */
+    static void remove(long[] keys, Object[] values, int i) {
+        int mask = keys.length - 1;
+        int gap = i;
+        for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = (int) MacAddress.hash(keys[j]) & mask;
+            // Move the entry into the gap unless its home lies cyclically in (gap, j]
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                if (values != null) {
+                    values[gap] = values[j];
+                }
+                gap = j;
+            }
+        }
+        keys[gap] = FREE;
+        if (values != null) {
+            values[gap] = null;
+        }
+    }
+
+    /**
+     * Inserts every entry of a table into a larger, empty one.
+     *
+     * @param fromValues the values of {@code from}, or null, as is
+     * {@code toValues}, if there are none.
+     */
+    static void rehash(long[] from, Object[] fromValues, long[] to, Object[] toValues) {
+        for (int i = 0; i < from.length; i++) {
+            if (from[i] != FREE) {
+                int j = slot(to, from[i], MacAddress.hash(from[i]));
+                to[j] = from[i];
+                if (toValues != null) {
+                    toValues[j] = fromValues[i];
+                }
+            }
+        }
+    }
+}
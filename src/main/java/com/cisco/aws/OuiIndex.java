@@ -0,0 +1,246 @@
+package com.cisco.aws;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Immutable in-memory registry table with longest-prefix-match lookups.
+ * <p>
+ * Every prefix length in use gets probed in a single open-addressing table
+ * keyed by {@code prefix << 6 | length}, longest length first. With the IEEE
+ * registries that is at most three probes (36, 28 and 24 bits) per lookup,
+ * none of which allocate. Instances are built once through {@link Builder}
+ * and are safe to share between threads.
+ * <p>
+ * Vendor names are dictionary encoded: each distinct organisation is stored
+ * once as UTF-8 in a shared byte array and slots only hold its int id. The
+ * name is decoded into a String only when a lookup returns it.
+ */
+final class OuiIndex implements OuiTable {
+
+    /**
+     * Marker for an unused slot. Encoded keys always carry a non-zero length.
+     */
+    private static final long EMPTY = 0L;
+
+    private final long[] keys;
+    private final int[] vendorIds;
+    /**
+     * UTF-8 vendor names, back to back. Name i spans
+     * {@code nameOffsets[i]} to {@code nameOffsets[i + 1]}.
+     */
+    private final byte[] names;
+    private final int[] nameOffsets;
+    private final int mask;
+    private final int size;
+    /**
+     * Bit n is set when at least one prefix of length n is registered.
+     */
+    private final long lengths;
+
+    private OuiIndex(long[] keys, int[] vendorIds, byte[] names, int[] nameOffsets, int size, long lengths) {
+        this.keys = keys;
+        this.vendorIds = vendorIds;
+        this.names = names;
+        this.nameOffsets = nameOffsets;
+        this.mask = keys.length - 1;
+        this.size = size;
+        this.lengths = lengths;
+    }
+
+    @Override
+    public String get(long mac) {
+        long remaining = lengths;
+        while (remaining != 0) {
+            int length = 63 - Long.numberOfLeadingZeros(remaining);
+            remaining &= ~(1L << length);
+            int id = find(key(mac >>> (48 - length), length));
+            if (id >= 0) {
+                return vendor(id);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String get(long prefix, int length) {
+        int id = find(key(prefix, length));
+        return id < 0 ? null : vendor(id);
+    }
+
+    private int find(long key) {
+        int slot = mix(key) & mask;
+        long candidate;
+        while ((candidate = keys[slot]) != EMPTY) {
+            if (candidate == key) {
+                return vendorIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private String vendor(int id) {
+        return new String(names, nameOffsets[id], nameOffsets[id + 1] - nameOffsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of distinct vendor names.
+     */
+    int vendorCount() {
+        return nameOffsets.length - 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                visitor.visit(keys[i] >>> 6, (int) (keys[i] & 0x3F), vendor(vendorIds[i]));
+            }
+        }
+    }
+
+    static long key(long prefix, int length) {
+        return prefix << 6 | length;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Collects registry entries. The first entry seen for a prefix wins, later
+     * duplicates are ignored.
+     */
+    static final class Builder {
+
+        private long[] keys = new long[1 << 16];
+        private int[] vendorIds = new int[1 << 16];
+        private int mask = keys.length - 1;
+        private int size;
+        private long lengths;
+
+        /**
+         * Open-addressing set of vendor names, slots hold id + 1.
+         */
+        private int[] dictionary = new int[1 << 15];
+        private int vendorCount;
+        private byte[] names = new byte[1 << 19];
+        private int[] nameOffsets = new int[1 << 14];
+
+        /**
+         * @param prefix the assigned prefix, right-aligned.
+         * @param length the prefix length in bits, 1 to 48.
+         * @param vendor buffer holding the UTF-8 vendor name, copied if new.
+         * @return true if the entry was added, false if the prefix was already present.
+         */
+        boolean add(long prefix, int length, byte[] vendor, int offset, int count) {
+            if (size * 2 >= keys.length) {
+                rehash(keys.length << 1);
+            }
+            long key = key(prefix, length);
+            int slot = mix(key) & mask;
+            long candidate;
+            while ((candidate = keys[slot]) != EMPTY) {
+                if (candidate == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            vendorIds[slot] = vendorId(vendor, offset, count);
+            lengths |= 1L << length;
+            size++;
+            return true;
+        }
+
+        private int vendorId(byte[] vendor, int offset, int count) {
+            if (vendorCount * 2 >= dictionary.length) {
+                rehashDictionary(dictionary.length << 1);
+            }
+            int dictionaryMask = dictionary.length - 1;
+            int slot = hash(vendor, offset, count) & dictionaryMask;
+            int entry;
+            while ((entry = dictionary[slot]) != 0) {
+                int id = entry - 1;
+                int start = nameOffsets[id];
+                if (nameOffsets[id + 1] - start == count && equals(names, start, vendor, offset, count)) {
+                    return id;
+                }
+                slot = (slot + 1) & dictionaryMask;
+            }
+
+            int id = vendorCount++;
+            if (id + 2 > nameOffsets.length) {
+                nameOffsets = Arrays.copyOf(nameOffsets, nameOffsets.length << 1);
+            }
+            int start = nameOffsets[id];
+            if (start + count > names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length << 1, start + count));
+            }
+            System.arraycopy(vendor, offset, names, start, count);
+            nameOffsets[id + 1] = start + count;
+            dictionary[slot] = id + 1;
+            return id;
+        }
+
+        OuiIndex build() {
+            return new OuiIndex(keys.clone(), vendorIds.clone(), Arrays.copyOf(names, nameOffsets[vendorCount]),
+                    Arrays.copyOf(nameOffsets, vendorCount + 1), size, lengths);
+        }
+
+        private void rehashDictionary(int capacity) {
+            dictionary = new int[capacity];
+            int dictionaryMask = capacity - 1;
+            for (int id = 0; id < vendorCount; id++) {
+                int start = nameOffsets[id];
+                int slot = hash(names, start, nameOffsets[id + 1] - start) & dictionaryMask;
+                while (dictionary[slot] != 0) {
+                    slot = (slot + 1) & dictionaryMask;
+                }
+                dictionary[slot] = id + 1;
+            }
+        }
+
+        private static int hash(byte[] b, int offset, int count) {
+            int h = 0x811C9DC5;
+            for (int i = offset; i < offset + count; i++) {
+                h = (h ^ b[i]) * 0x01000193;
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean equals(byte[] a, int aOffset, byte[] b, int bOffset, int count) {
+            for (int i = 0; i < count; i++) {
+                if (a[aOffset + i] != b[bOffset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldVendorIds = vendorIds;
+            keys = new long[capacity];
+            vendorIds = new int[capacity];
+            mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = mix(oldKeys[i]) & mask;
+                    while (keys[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    vendorIds[slot] = oldVendorIds[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.cisco.aws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the IEEE registry text format into an {@link OuiIndex.Builder}.
+ * <p>
+ * MA-L and CID files list one 24-bit assignment per {@code XXXXXX (base 16)}
+ * line. MA-M, MA-S and IAB files follow the {@code XX-XX-XX (hex)} line of the
+ * parent block with a {@code LLLLLL-HHHHHH (base 16)} range of the remaining
+ * 24 bits; the size of that range gives the prefix length (28 or 36 bits).
+ * MA-M and MA-S headers also spell out the assignment's leading nibbles, as in
+ * {@code 70-B3-D5-F2-F (hex)}, and a range that disagrees with them is
+ * skipped. A range is only read within the record of its header: any other
+ * {@code (hex)} line or a blank line drops the parent block.
+ * <p>
+ * The scanner works directly on the raw bytes: hex digits are folded into a
+ * long as they are read and vendor names are handed to the builder as a slice
+ * of the read buffer, so no String or regex state is created per line.
+ */
+final class OuiRegistryParser {
+
+    private static final byte[] HEX_TAG = {'(', 'h', 'e', 'x', ')'};
+    private static final byte[] BASE16_TAG = {'(', 'b', 'a', 's', 'e', ' ', '1', '6', ')'};
+
+    private final OuiIndex.Builder builder;
+    private long block = -1;
+    /**
+     * Nibbles the header lists past the parent block, and how many bits.
+     */
+    private long extension;
+    private int extensionBits;
+    private int count;
+
+    private OuiRegistryParser(OuiIndex.Builder builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * Adds every assignment of the registry to the builder. The stream is
+     * closed when done.
+     *
+     * @return the number of assignments read.
+     */
+    static int parse(InputStream is, OuiIndex.Builder builder) throws IOException {
+        OuiRegistryParser parser = new OuiRegistryParser(builder);
+        byte[] buf = new byte[1 << 16];
+        int start = 0;
+        int end = 0;
+        int scan = 0;
+        try (InputStream in = is) {
+            while (true) {
+                int newline = scan;
+                while (newline < end && buf[newline] != '\n') {
+                    newline++;
+                }
+                if (newline < end) {
+                    parser.line(buf, start, newline);
+                    start = newline + 1;
+                    scan = start;
+                    continue;
+                }
+                // No complete line left in the buffer, keep the tail and refill.
+                if (start > 0) {
+                    System.arraycopy(buf, start, buf, 0, end - start);
+                    end -= start;
+                    start = 0;
+                } else if (end == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length << 1);
+                }
+                scan = end;
+                int read = in.read(buf, end, buf.length - end);
+                if (read < 0) {
+                    if (end > start) {
+                        parser.line(buf, start, end);
+                    }
+                    break;
+                }
+                end += read;
+            }
+        }
+        return parser.count;
+    }
+
+    private void line(byte[] b, int from, int to) {
+        while (to > from && isSpace(b[to - 1])) {
+            to--;
+        }
+        int p = skipSpace(b, from, to);
+        if (p == to) {
+            // End of the record
+            block = -1;
+            return;
+        }
+        if (p + 8 <= to && b[p + 2] == '-' && b[p + 5] == '-') {
+            header(b, p, to);
+            return;
+        }
+
+        long low = hex(b, p, 6, to);
+        if (low < 0) {
+            return;
+        }
+        p += 6;
+        long high = -1;
+        if (p < to && b[p] == '-') {
+            high = hex(b, p + 1, 6, to);
+            if (high < 0) {
+                return;
+            }
+            p += 7;
+        }
+        int vendor = tag(b, skipSpace(b, p, to), to, BASE16_TAG);
+        if (vendor < 0) {
+            if (indexOf(b, from, to, HEX_TAG) >= 0) {
+                block = -1;
+            }
+            return;
+        }
+        vendor = skipSpace(b, vendor, to);
+
+        if (high < 0) {
+            builder.add(low, 24, b, vendor, to - vendor);
+            count++;
+        } else if (block >= 0) {
+            long span = high - low + 1;
+            int hostBits = Long.numberOfTrailingZeros(span);
+            if (span == Long.lowestOneBit(span) && (low & (span - 1)) == 0 && hostBits <= 24 - extensionBits
+                    && low >>> (24 - extensionBits) == extension) {
+                builder.add(((block << 24) | low) >>> hostBits, 48 - hostBits, b, vendor, to - vendor);
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Reads an {@code XX-XX-XX (hex)} header, optionally followed by up to
+     * three more nibbles in the MA-M and MA-S style. Drops the parent block
+     * if the line is not a well-formed header.
+     */
+    private void header(byte[] b, int p, int to) {
+        long high = hex(b, p, 2, to);
+        long mid = hex(b, p + 3, 2, to);
+        long low = hex(b, p + 6, 2, to);
+        block = -1;
+        extension = 0;
+        extensionBits = 0;
+        if ((high | mid | low) < 0) {
+            return;
+        }
+        p += 8;
+        while (p < to && b[p] == '-') {
+            int digits = 0;
+            while (digits < 2 && hex(b, p + 1 + digits, 1, to) >= 0) {
+                digits++;
+            }
+            if (digits == 0 || extensionBits + 4 * digits > 12) {
+                return;
+            }
+            extension = extension << 4 * digits | hex(b, p + 1, digits, to);
+            extensionBits += 4 * digits;
+            p += 1 + digits;
+        }
+        if (tag(b, skipSpace(b, p, to), to, HEX_TAG) > 0) {
+            block = high << 16 | mid << 8 | low;
+        }
+    }
+
+    /**
+     * @return the value of {@code digits} hex digits at {@code p}, or -1.
+     */
+    private static long hex(byte[] b, int p, int digits, int to) {
+        if (p + digits > to) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = p; i < p + digits; i++) {
+            int c = b[i];
+            int nibble;
+            if (c >= '0' && c <= '9') {
+                nibble = c - '0';
+            } else if (c >= 'A' && c <= 'F') {
+                nibble = c - 'A' + 10;
+            } else if (c >= 'a' && c <= 'f') {
+                nibble = c - 'a' + 10;
+            } else {
+                return -1;
+            }
+            value = value << 4 | nibble;
+        }
+        return value;
+    }
+
+    /**
+     * @return the position after {@code tag} if it starts at {@code p}, or -1.
+     */
+    private static int tag(byte[] b, int p, int to, byte[] tag) {
+        if (p + tag.length > to) {
+            return -1;
+        }
+        for (int i = 0; i < tag.length; i++) {
+            if (b[p + i] != tag[i]) {
+                return -1;
+            }
+        }
+        return p + tag.length;
+    }
+
+    private static int indexOf(byte[] b, int from, int to, byte[] tag) {
+        for (int p = from; p + tag.length <= to; p++) {
+            if (tag(b, p, to, tag) >= 0) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSpace(byte[] b, int p, int to) {
+        while (p < to && isSpace(b[p])) {
+            p++;
+        }
+        return p;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+}
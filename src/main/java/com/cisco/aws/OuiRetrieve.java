@@ -1,73 +1,230 @@
 package com.cisco.aws;
 
 import java.io.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+
+@Component
 public class OuiRetrieve {
-	private StringBuilder builder = null;
 
+    private static final Logger logger = LoggerFactory.getLogger(OuiRetrieve.class);
 
-    private void downloadUsingStream() throws IOException {
+    /**
+     * Local IEEE registry files (MA-L, MA-M, MA-S, IAB, CID). When empty the
+     * snapshot compiled into the jar is used.
+     */
+    @Value("${oui.registry.files:}")
+    private String[] registryFiles = new String[0];
 
-        LineNumberReader in = null;
-        FileReader fr = null;
-        BufferedReader br =null;
-        Matcher m = Pattern.compile("^\\s*([0-9a-fA-f]{2})([0-9a-fA-f]{2})([0-9a-fA-f]{2})\\s+\\(base 16\\)\\s+(.*)$").matcher("");
-        try {
-            //fr = new FileReader("oui.txt");
-        	
-        	
-        	InputStream is = this.getClass().getResourceAsStream("/oui.txt");
-        	//System.out.println("Inputsteram"+is);
-        	br = new BufferedReader(new InputStreamReader(is));
-//            fr = new FileReader(new InputStreamReader(is));
-//            in = new LineNumberReader(fr);
-        	//System.out.println("Loaded out.txt");
-        } catch (Exception ex) {
-            ex.printStackTrace();
+    /**
+     * How often to check the registry files for changes, 0 to only reload on
+     * demand.
+     */
+    @Value("${oui.reload.interval-ms:0}")
+    private long reloadIntervalMs = 0;
+
+    /**
+     * Registry table shared by all requests. A reload builds a complete new
+     * table and swaps it in with a single volatile write, so lookups never
+     * block and never see a partially built table.
+     */
+    private volatile OuiTable index = null;
+
+    /**
+     * Vendor name search over {@link #index}, rebuilt with every reload. Built
+     * off the startup path, see {@link #vendorSearch()}.
+     */
+    private volatile OuiVendorSearch search = null;
+
+    /**
+     * Runs reloads one at a time, off the request threads.
+     */
+    private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "oui-reload");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private long registryModified = 0;
+
+
+    @PostConstruct
+    public void init() throws IOException {
+        long start = System.currentTimeMillis();
+        URL snapshot = this.getClass().getResource("/oui.bin");
+        if (registryFiles.length > 0) {
+            index = loadRegistryFiles(registryFiles);
+        } else if (snapshot != null) {
+            index = OuiSnapshot.map(snapshot);
+        } else {
+            logger.warn("oui.bin not found on classpath, parsing oui.txt");
+            index = downloadUsingStream();
         }
-        
-        //System.out.println("Br object"+br);
-
-        if (br != null) {
-            builder = new StringBuilder();
-            String s = br.readLine();
-            //System.out.println("Text file is " + s);
-            String ouiMapKey = null;
-            String ouiManufacturer = null;
-            while (s != null) {
-                m.reset(s);
-                if (m.matches()) {
-                    ouiMapKey = m.group(1) + m.group(2) + m.group(3);
-                    ouiManufacturer = m.group(4);
-                    //System.out.println("Key is " + ouiMapKey + " Value is " + ouiManufacturer);
-                    builder.append(ouiMapKey + "," + ouiManufacturer + "\n");
-                } // if m matches
-                s = br.readLine();
-            } // while s not null
+        logger.info("Loaded " + index.size() + " OUI entries in " + (System.currentTimeMillis() - start) + " ms");
+        reloader.execute(this::vendorSearch);
+
+        registryModified = lastModified(registryFiles);
+        if (registryFiles.length > 0 && reloadIntervalMs > 0) {
+            reloader.scheduleWithFixedDelay(this::reloadIfModified, reloadIntervalMs, reloadIntervalMs, TimeUnit.MILLISECONDS);
         }
     }
 
+    @PreDestroy
+    public void destroy() {
+        reloader.shutdownNow();
+    }
 
-    public String getOUIFromIEEE(String mac) {
+    /**
+     * Queues a reload of the configured registry files on the background thread.
+     *
+     * @return false if no registry files are configured.
+     */
+    public boolean scheduleReload() {
+        if (registryFiles.length == 0) {
+            return false;
+        }
+        reloader.execute(this::reload);
+        return true;
+    }
+
+    private void reloadIfModified() {
+        if (lastModified(registryFiles) != registryModified) {
+            reload();
+        }
+    }
+
+    private void reload() {
+        long start = System.currentTimeMillis();
+        long modified = lastModified(registryFiles);
+        OuiTable fresh;
         try {
-            downloadUsingStream();
-        } catch (IOException ex) {
-            ex.printStackTrace();
+            fresh = loadRegistryFiles(registryFiles);
+        } catch (Exception e) {
+            logger.error("OUI registry reload failed, keeping current table", e);
+            return;
         }
+        OuiVendorSearch freshSearch = new OuiVendorSearch(fresh);
+        OuiTable previous;
+        synchronized (this) {
+            previous = index;
+            index = fresh;
+            search = freshSearch;
+        }
+        registryModified = modified;
+        logDiff(previous, fresh, System.currentTimeMillis() - start);
+    }
 
-        String[] formatedMac = mac.split(":");
-        String newMac = formatedMac[0] + formatedMac[1] + formatedMac[2];
-        String[] OUI = builder.toString().split("\n");
-        int index = -1;
-        for (int i = 0; i < OUI.length; i++) {
-            if (OUI[i].indexOf(newMac) > -1) {
-                index = i;
+    private static void logDiff(OuiTable previous, OuiTable fresh, long elapsed) {
+        final int[] counts = new int[3];
+        fresh.forEach((prefix, length, vendor) -> {
+            String old = previous.get(prefix, length);
+            if (old == null) {
+                counts[0]++;
+            } else if (!old.equals(vendor)) {
+                counts[2]++;
+            }
+        });
+        previous.forEach((prefix, length, vendor) -> {
+            if (fresh.get(prefix, length) == null) {
+                counts[1]++;
             }
+        });
+        logger.info("Reloaded " + fresh.size() + " OUI entries in " + elapsed + " ms: "
+                + counts[0] + " added, " + counts[1] + " removed, " + counts[2] + " changed");
+    }
+
+    private static long lastModified(String[] files) {
+        long modified = 0;
+        for (String file : files) {
+            modified = 31 * modified + new File(file.trim()).lastModified();
         }
+        return modified;
+    }
+
+    private OuiIndex loadRegistryFiles(String[] files) throws IOException {
+        OuiIndex.Builder builder = new OuiIndex.Builder();
+        for (String file : files) {
+            int count = OuiRegistryParser.parse(new FileInputStream(file.trim()), builder);
+            logger.info("Read " + count + " assignments from " + file);
+        }
+        return builder.build();
+    }
+
+    private OuiIndex downloadUsingStream() throws IOException {
+        InputStream is = this.getClass().getResourceAsStream("/oui.txt");
+        if (is == null) {
+            throw new FileNotFoundException("oui.txt not found on classpath");
+        }
+        OuiIndex.Builder builder = new OuiIndex.Builder();
+        OuiRegistryParser.parse(is, builder);
+        return builder.build();
+    }
+
+
+    public String getOUIFromIEEE(String mac) {
+        return getOUIFromIEEE(MacAddress.parse(mac));
+    }
 
-        return index > -1 ? OUI[index].split(",")[1] : null;
+    /**
+     * Same as {@link #getOUIFromIEEE(String)} for an address held in a
+     * character buffer, e.g. straight out of a streaming JSON parser.
+     */
+    public String getOUIFromIEEE(char[] mac, int offset, int length) {
+        return getOUIFromIEEE(MacAddress.parse(mac, offset, length));
+    }
+
+    /**
+     * @param mac a parsed address, or {@link MacAddress#INVALID}.
+     */
+    public String getOUIFromIEEE(long mac) {
+        return mac == MacAddress.INVALID ? null : index.get(mac);
+    }
+
+    /**
+     * @return vendors whose name contains or resembles the query, best match first.
+     */
+    public List<OuiVendor> searchVendors(String query, int limit) {
+        OuiVendorSearch current = vendorSearch();
+        List<OuiVendor> result = new ArrayList<>();
+        for (int id : current.search(query, limit)) {
+            result.add(new OuiVendor(current.name(id), current.prefixes(id)));
+        }
+        return result;
+    }
+
+    /**
+     * @return the prefixes registered to a vendor, or null if the name is unknown.
+     */
+    public OuiVendor getVendor(String name) {
+        OuiVendorSearch current = vendorSearch();
+        int id = current.find(name);
+        return id < 0 ? null : new OuiVendor(current.name(id), current.prefixes(id));
+    }
+
+    private OuiVendorSearch vendorSearch() {
+        OuiVendorSearch current = search;
+        if (current == null) {
+            synchronized (this) {
+                current = search;
+                if (current == null) {
+                    current = new OuiVendorSearch(index);
+                    search = current;
+                }
+            }
+        }
+        return current;
     }
 }
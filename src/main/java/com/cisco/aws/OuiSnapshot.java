@@ -0,0 +1,232 @@
+package com.cisco.aws;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Precompiled, memory-mapped form of the OUI registry.
+ * <p>
+ * The file is produced at build time from the registry text files (see the
+ * exec-maven-plugin execution in pom.xml) and laid out as:
+ * <pre>
+ * int     magic ("OUI2")
+ * int     count
+ * long    bit set of the prefix lengths in use
+ * long[]  prefix keys, {@code prefix << 6 | length}, sorted ascending
+ * int[]   vendor offsets into string table   (count entries)
+ * int     string table length in bytes
+ * byte[]  string table: u16 length + UTF-8 bytes per distinct vendor
+ * </pre>
+ * Lookups binary search the mapped key array in place once per prefix length,
+ * longest first, so the table stays off-heap and nothing is parsed at startup.
+ */
+public final class OuiSnapshot implements OuiTable {
+
+    static final int MAGIC = 0x4F554932;
+
+    private static final int HEADER_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final long lengths;
+    private final int offsetsBase;
+    private final int stringsBase;
+
+    private OuiSnapshot(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an OUI snapshot");
+        }
+        this.buffer = buffer;
+        this.count = buffer.getInt(4);
+        this.lengths = buffer.getLong(8);
+        this.offsetsBase = HEADER_BYTES + count * 8;
+        this.stringsBase = offsetsBase + count * 4 + 4;
+    }
+
+    /**
+     * Maps a snapshot file read-only.
+     */
+    static OuiSnapshot map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new OuiSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Maps a snapshot found on the classpath. Entries packed inside a jar cannot
+     * be mapped directly, so those are first copied to a temporary file.
+     */
+    static OuiSnapshot map(URL resource) throws IOException {
+        if ("file".equals(resource.getProtocol())) {
+            try {
+                return map(Paths.get(resource.toURI()));
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+        Path copy = Files.createTempFile("oui", ".bin");
+        copy.toFile().deleteOnExit();
+        try (InputStream in = resource.openStream()) {
+            Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return map(copy);
+    }
+
+    @Override
+    public String get(long mac) {
+        long remaining = lengths;
+        while (remaining != 0) {
+            int length = 63 - Long.numberOfLeadingZeros(remaining);
+            remaining &= ~(1L << length);
+            int entry = find(OuiIndex.key(mac >>> (48 - length), length));
+            if (entry >= 0) {
+                return vendorAt(buffer.getInt(offsetsBase + entry * 4));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String get(long prefix, int length) {
+        int entry = find(OuiIndex.key(prefix, length));
+        return entry < 0 ? null : vendorAt(buffer.getInt(offsetsBase + entry * 4));
+    }
+
+    private int find(long key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long candidate = buffer.getLong(HEADER_BYTES + mid * 8);
+            if (candidate < key) {
+                low = mid + 1;
+            } else if (candidate > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < count; i++) {
+            long key = buffer.getLong(HEADER_BYTES + i * 8);
+            visitor.visit(key >>> 6, (int) (key & 0x3F), vendorAt(buffer.getInt(offsetsBase + i * 4)));
+        }
+    }
+
+    private String vendorAt(int offset) {
+        int position = stringsBase + offset;
+        byte[] bytes = new byte[buffer.getShort(position) & 0xFFFF];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializes an index in snapshot format.
+     */
+    static void write(OuiTable index, OutputStream out) throws IOException {
+        final long[] keys = new long[index.size()];
+        final Map<Long, String> vendors = new HashMap<>();
+        final int[] n = {0};
+        final long[] lengths = {0};
+        index.forEach((prefix, length, vendor) -> {
+            long key = OuiIndex.key(prefix, length);
+            keys[n[0]++] = key;
+            vendors.put(key, vendor);
+            lengths[0] |= 1L << length;
+        });
+        Arrays.sort(keys);
+
+        Map<String, Integer> offsets = new HashMap<>();
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream table = new DataOutputStream(strings);
+        int[] vendorOffsets = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            String vendor = vendors.get(keys[i]);
+            Integer offset = offsets.get(vendor);
+            if (offset == null) {
+                byte[] bytes = vendor.getBytes(StandardCharsets.UTF_8);
+                offset = table.size();
+                table.writeShort(bytes.length);
+                table.write(bytes);
+                offsets.put(vendor, offset);
+            }
+            vendorOffsets[i] = offset;
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(keys.length);
+        data.writeLong(lengths[0]);
+        for (long key : keys) {
+            data.writeLong(key);
+        }
+        for (int offset : vendorOffsets) {
+            data.writeInt(offset);
+        }
+        data.writeInt(strings.size());
+        strings.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Build step: compiles registry text files into a snapshot. Registry files
+     * that do not exist are skipped, so optional registries (MA-M, MA-S, IAB,
+     * CID) only need to be dropped next to oui.txt to be picked up.
+     *
+     * @param args target snapshot path followed by the registry files.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: OuiSnapshot <oui.bin> <registry.txt>...");
+        }
+        OuiIndex.Builder builder = new OuiIndex.Builder();
+        for (int i = 1; i < args.length; i++) {
+            File registry = new File(args[i]);
+            if (registry.isFile()) {
+                int count = OuiRegistryParser.parse(new FileInputStream(registry), builder);
+                System.out.println("Read " + count + " assignments from " + registry);
+            }
+        }
+        OuiIndex index = builder.build();
+
+        Path target = Paths.get(args[0]);
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        try (OutputStream out = new FileOutputStream(target.toFile())) {
+            write(index, out);
+        }
+        System.out.println("Wrote " + index.size() + " OUI entries to " + target);
+    }
+}
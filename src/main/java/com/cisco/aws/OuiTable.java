@@ -0,0 +1,36 @@
+package com.cisco.aws;
+
+/**
+ * Read-only view of the IEEE registries (MA-L, MA-M, MA-S, IAB and CID).
+ * <p>
+ * Assignments are prefixes of the 48-bit MAC address space, 24, 28 or 36 bits
+ * long. A prefix is held right-aligned in a long together with its length.
+ */
+interface OuiTable {
+
+    /**
+     * @param mac a 48-bit MAC address in the low bits.
+     * @return the organisation owning the longest registered prefix of the
+     * address, or null if no prefix matches.
+     */
+    String get(long mac);
+
+    /**
+     * @return the organisation owning exactly this prefix, or null.
+     */
+    String get(long prefix, int length);
+
+    /**
+     * @return the number of registered prefixes.
+     */
+    int size();
+
+    /**
+     * Visits every registered prefix.
+     */
+    void forEach(EntryVisitor visitor);
+
+    interface EntryVisitor {
+        void visit(long prefix, int length, String vendor);
+    }
+}
@@ -0,0 +1,34 @@
+package com.cisco.aws;
+
+import java.util.List;
+
+/**
+ * A registry organisation and the prefixes assigned to it.
+ */
+public class OuiVendor {
+    private String vendor;
+    private List<String> prefixes;
+
+    public OuiVendor() {  }
+
+    public OuiVendor(String vendor, List<String> prefixes) {
+        this.vendor = vendor;
+        this.prefixes = prefixes;
+    }
+
+    public String getVendor() {
+        return vendor;
+    }
+
+    public List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    public void setVendor(String vendor) {
+        this.vendor = vendor;
+    }
+
+    public void setPrefixes(List<String> prefixes) {
+        this.prefixes = prefixes;
+    }
+}
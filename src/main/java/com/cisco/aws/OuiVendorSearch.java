@@ -0,0 +1,289 @@
+package com.cisco.aws;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reverse index over an {@link OuiTable}: vendor name to the prefixes it owns.
+ * <p>
+ * Names are normalised (lower case, punctuation folded to single spaces) so
+ * that spelling variants such as "Cisco Systems, Inc" and "Cisco Systems Inc."
+ * group together. Substring and fuzzy search go through a trigram index of
+ * the normalised names: candidates come from intersecting the posting lists
+ * of the query's trigrams, so a query only touches the vendors that can
+ * match instead of scanning the whole registry. Each character is folded to a
+ * 6-bit code, which makes a trigram an 18-bit number that indexes the posting
+ * lists directly; the rare collisions this causes for non-ASCII letters are
+ * weeded out by checking the candidate names.
+ * <p>
+ * Instances are immutable and built for one table; a reloaded table gets a
+ * new search index.
+ */
+final class OuiVendorSearch {
+
+    private static final int[] NO_VENDORS = new int[0];
+
+    private static final int TRIGRAMS = 1 << 18;
+
+    /**
+     * Per vendor id: the first spelling seen, the normalised form and its
+     * prefixes, {@code prefixes[prefixStart[id]]} up to
+     * {@code prefixes[prefixStart[id + 1]]}, as {@code prefix << 6 | length}.
+     */
+    private final String[] names;
+    private final String[] normalized;
+    private final int[] prefixStart;
+    private final long[] prefixes;
+
+    private final Map<String, Integer> byName;
+    /**
+     * Posting lists: the ascending ids of the vendors whose normalised name
+     * contains trigram t are {@code postings[postingStart[t]]} up to
+     * {@code postings[postingStart[t + 1]]}.
+     */
+    private final int[] postingStart;
+    private final int[] postings;
+
+    OuiVendorSearch(OuiTable table) {
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> names = new ArrayList<>();
+        final long[] entries = new long[table.size()];
+        final int[] n = {0};
+        table.forEach((prefix, length, vendor) -> {
+            String key = normalize(vendor);
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = names.size();
+                ids.put(key, id);
+                names.add(vendor);
+            }
+            // vendor id in the high bits so sorting groups each vendor's prefixes
+            entries[n[0]++] = (long) id << 42 | OuiIndex.key(prefix, length);
+        });
+        Arrays.sort(entries, 0, n[0]);
+
+        int count = names.size();
+        this.names = names.toArray(new String[count]);
+        this.normalized = new String[count];
+        for (Map.Entry<String, Integer> e : ids.entrySet()) {
+            normalized[e.getValue()] = e.getKey();
+        }
+        this.prefixStart = new int[count + 1];
+        this.prefixes = new long[n[0]];
+        for (int i = 0; i < n[0]; i++) {
+            prefixes[i] = entries[i] & ((1L << 42) - 1);
+            prefixStart[(int) (entries[i] >>> 42) + 1]++;
+        }
+        for (int id = 0; id < count; id++) {
+            prefixStart[id + 1] += prefixStart[id];
+        }
+        this.byName = ids;
+
+        // Two passes over the names: count, then fill. lastId skips repeats of
+        // a trigram within one name.
+        this.postingStart = new int[TRIGRAMS + 1];
+        int[] lastId = new int[TRIGRAMS];
+        Arrays.fill(lastId, -1);
+        for (int id = 0; id < count; id++) {
+            String name = normalized[id];
+            for (int i = 0; i + 3 <= name.length(); i++) {
+                int t = trigram(name, i);
+                if (lastId[t] != id) {
+                    lastId[t] = id;
+                    postingStart[t + 1]++;
+                }
+            }
+        }
+        for (int t = 0; t < TRIGRAMS; t++) {
+            postingStart[t + 1] += postingStart[t];
+        }
+        this.postings = new int[postingStart[TRIGRAMS]];
+        int[] fill = Arrays.copyOf(postingStart, TRIGRAMS);
+        Arrays.fill(lastId, -1);
+        for (int id = 0; id < count; id++) {
+            String name = normalized[id];
+            for (int i = 0; i + 3 <= name.length(); i++) {
+                int t = trigram(name, i);
+                if (lastId[t] != id) {
+                    lastId[t] = id;
+                    postings[fill[t]++] = id;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the id of the vendor with this name, compared after
+     * normalisation, or -1.
+     */
+    int find(String vendor) {
+        Integer id = byName.get(normalize(vendor));
+        return id == null ? -1 : id;
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return the prefixes owned by a vendor, formatted as
+     * {@code AA:BB:CC:D0:00:00/28}.
+     */
+    List<String> prefixes(int id) {
+        List<String> result = new ArrayList<>(prefixStart[id + 1] - prefixStart[id]);
+        for (int i = prefixStart[id]; i < prefixStart[id + 1]; i++) {
+            int length = (int) (prefixes[i] & 0x3F);
+            long mac = (prefixes[i] >>> 6) << (48 - length);
+            result.add(MacAddress.toString(mac) + "/" + length);
+        }
+        return result;
+    }
+
+    /**
+     * Vendors whose name contains the query, best first: exact matches, then
+     * names starting with the query, then any other substring match. When
+     * nothing contains the query, falls back to vendors sharing at least half
+     * of its trigrams.
+     *
+     * @return up to {@code limit} vendor ids.
+     */
+    List<Integer> search(String query, int limit) {
+        final String q = normalize(query);
+        if (q.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<Integer> hits = new ArrayList<>();
+        if (q.length() < 3) {
+            for (int id = 0; id < normalized.length; id++) {
+                if (normalized[id].contains(q)) {
+                    hits.add(id);
+                }
+            }
+        } else {
+            for (int id : candidates(q)) {
+                if (normalized[id].contains(q)) {
+                    hits.add(id);
+                }
+            }
+        }
+        if (hits.isEmpty() && q.length() >= 3) {
+            return fuzzy(q, limit);
+        }
+        hits.sort((a, b) -> {
+            int rank = Integer.compare(rank(normalized[a], q), rank(normalized[b], q));
+            return rank != 0 ? rank : normalized[a].compareTo(normalized[b]);
+        });
+        return hits.size() > limit ? hits.subList(0, limit) : hits;
+    }
+
+    /**
+     * @return the vendors containing every trigram of the query.
+     */
+    private int[] candidates(String q) {
+        int total = q.length() - 2;
+        // intersect the shortest lists first
+        Integer[] sorted = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            sorted[i] = trigram(q, i);
+        }
+        Arrays.sort(sorted, (a, b) -> Integer.compare(postingLength(a), postingLength(b)));
+
+        int first = sorted[0];
+        int[] result = Arrays.copyOfRange(postings, postingStart[first], postingStart[first + 1]);
+        int size = result.length;
+        for (int l = 1; l < total && size > 0; l++) {
+            int t = sorted[l];
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (Arrays.binarySearch(postings, postingStart[t], postingStart[t + 1], result[i]) >= 0) {
+                    result[kept++] = result[i];
+                }
+            }
+            size = kept;
+        }
+        return size == 0 ? NO_VENDORS : Arrays.copyOf(result, size);
+    }
+
+    private int postingLength(int t) {
+        return postingStart[t + 1] - postingStart[t];
+    }
+
+    private List<Integer> fuzzy(String q, int limit) {
+        int total = q.length() - 2;
+        final int[] shared = new int[normalized.length];
+        List<Integer> hits = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            int t = trigram(q, i);
+            for (int p = postingStart[t]; p < postingStart[t + 1]; p++) {
+                int id = postings[p];
+                if (shared[id]++ == 0) {
+                    hits.add(id);
+                }
+            }
+        }
+        int threshold = (total + 1) / 2;
+        hits.removeIf(id -> shared[id] < threshold);
+        // most trigrams in common first, then the closest in length
+        hits.sort((a, b) -> {
+            int rank = Integer.compare(shared[b], shared[a]);
+            if (rank == 0) {
+                rank = Integer.compare(Math.abs(normalized[a].length() - q.length()),
+                        Math.abs(normalized[b].length() - q.length()));
+            }
+            return rank != 0 ? rank : normalized[a].compareTo(normalized[b]);
+        });
+        return hits.size() > limit ? hits.subList(0, limit) : hits;
+    }
+
+    private static int rank(String name, String q) {
+        if (name.equals(q)) {
+            return 0;
+        }
+        return name.startsWith(q) ? 1 : 2;
+    }
+
+    private static int trigram(String s, int i) {
+        return code(s.charAt(i)) << 12 | code(s.charAt(i + 1)) << 6 | code(s.charAt(i + 2));
+    }
+
+    /**
+     * Folds a normalised character to 6 bits: digits and a-z get their own
+     * codes, other letters share the remaining ones.
+     */
+    private static int code(char c) {
+        if (c == ' ') {
+            return 0;
+        } else if (c >= '0' && c <= '9') {
+            return 1 + c - '0';
+        } else if (c >= 'a' && c <= 'z') {
+            return 11 + c - 'a';
+        }
+        return 37 + c % 27;
+    }
+
+    /**
+     * Lower case, with every run of non letter-or-digit characters folded
+     * into a single space.
+     */
+    static String normalize(String vendor) {
+        StringBuilder sb = new StringBuilder(vendor.length());
+        boolean space = false;
+        for (int i = 0; i < vendor.length(); i++) {
+            char c = vendor.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(Character.toLowerCase(c));
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return sb.toString();
+    }
+}
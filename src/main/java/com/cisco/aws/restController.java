@@ -3,11 +3,34 @@ package com.cisco.aws;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -16,48 +39,332 @@ public class restController {
 
     private static final Logger logger = LoggerFactory.getLogger(restController.class);
 
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    @Autowired
+    private OuiRetrieve oui;
+
+    @Autowired
+    private FingerBank fb;
+
+    @Autowired
+    private EndPointRegistry registry;
+
+    /**
+     * How long /ep2 waits for FingerBank before answering with the OUI
+     * vendor, 0 to always wait.
+     */
+    @Value("${ep2.fingerbank-deadline-ms:0}")
+    private long fingerbankDeadlineMs;
+
+    /**
+     * Upper bound on how long /ep2 holds a request, queued lookups included,
+     * before answering with the OUI vendor. Kept below
+     * {@code spring.mvc.async.request-timeout}, so the client gets the vendor
+     * rather than a 503.
+     */
+    @Value("${ep2.timeout-ms:20000}")
+    private long ep2TimeoutMs;
+
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ep2-deadline");
+        t.setDaemon(true);
+        return t;
+    });
+
     @GetMapping("/ep")
     public String show() {
         logger.info("=====================================================================");
         return "Request recieved from the client";
     }
 
+    /**
+     * Classifies through FingerBank, falling back to the OUI vendor for
+     * unknown devices or when too many lookups are already pending. The
+     * servlet thread is released while FingerBank is called.
+     * <p>
+     * The OUI vendor is looked up up front, so with
+     * {@code ep2.fingerbank-deadline-ms} set it is returned as soon as
+     * FingerBank misses the deadline or fails. Regardless, a request still
+     * waiting after {@code ep2.timeout-ms} gets the vendor. Both answers, when
+     * known, are also returned in the X-Fingerbank-Device and X-OUI-Vendor
+     * headers.
+     * <p>
+     * Endpoints are kept in the {@link EndPointRegistry}, each request merged
+     * into what is stored for its MAC. It is classified again only when the
+     * merge changed an attribute FingerBank classifies on.
+     */
     @PostMapping("/ep2")
-    public String getEndpointFromFB(@RequestBody EndPoint endPoint){
+    public DeferredResult<ResponseEntity<String>> getEndpointFromFB(@RequestBody EndPoint endPoint){
         String endP = endPoint.getMac();
         //String endP = endPoint.getMac();
-        OuiRetrieve oui = null; 
-        FingerBank fb = new FingerBank();
         logger.info("________________________________________________");
         logger.info(endP);
         logger.info("________________________________________________");
-        String result = fb.postDeviceName(endPoint);
-        
-        
-        if(result.equals("Unknown"))
-        {
-        	System.out.println("Unknown hit");
-        	oui = new OuiRetrieve();
-        	result = oui.getOUIFromIEEE(endP);
+        //Parsed once, everything below takes the long
+        long mac = endPoint.macAddress();
+        String vendor = oui.getOUIFromIEEE(mac);
+        DeferredResult<ResponseEntity<String>> deferred = new DeferredResult<>(ep2TimeoutMs);
+        deferred.onTimeout(() -> {
+            if (deferred.setResult(classification(vendor, null, vendor))) {
+                logger.warn("FingerBank lookup still pending after {} ms, using OUI vendor for {}", ep2TimeoutMs, endP);
+            }
+        });
+        EndPoint stored = registry.merge(mac, endPoint);
+        String known = registry.knownClassification(stored, endPoint);
+        if (known != null) {
+            deferred.setResult(classification(known, known, vendor));
+            return deferred;
+        }
+        String[] basis = registry.classificationBasis(stored);
+        CompletableFuture<String> lookup = fb.postDeviceNameAsync(stored, mac);
+
+        ScheduledFuture<?> deadline = null;
+        if (fingerbankDeadlineMs > 0 && vendor != null && !lookup.isDone()) {
+            deadline = deadlines.schedule(() -> {
+                if (deferred.setResult(classification(vendor, null, vendor))) {
+                    logger.info("FingerBank missed the {} ms deadline, using OUI vendor for {}", fingerbankDeadlineMs, endP);
+                }
+            }, fingerbankDeadlineMs, TimeUnit.MILLISECONDS);
         }
+        ScheduledFuture<?> timer = deadline;
+        lookup.whenComplete((result, error) -> {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            if (error instanceof CompletionException) {
+                error = error.getCause();
+            }
+            if (error instanceof RejectedExecutionException) {
+                logger.warn("FingerBank busy, using OUI vendor for {}", endP);
+                result = "Unknown";
+            } else if (error != null && timer != null) {
+                logger.warn("FingerBank failed, using OUI vendor for {}: {}", endP, error.getMessage());
+                result = "Unknown";
+            } else if (error != null) {
+                deferred.setErrorResult(error);
+                return;
+            }
+            if (error == null) {
+                registry.classified(mac, stored, basis, result);
+            }
+            if(result.equals("Unknown"))
+            {
+            	logger.debug("FingerBank does not know {}, using OUI vendor", endP);
+            	deferred.setResult(classification(vendor, null, vendor));
+            } else {
+                deferred.setResult(classification(result, result, vendor));
+            }
+        });
         //EndPoint ep = new EndPoint();
         //ep.setMac("11:11:11:11:11:11");
-        return result;
+        return deferred;
+    }
+
+    private static ResponseEntity<String> classification(String body, String device, String vendor) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (device != null) {
+            response.header("X-Fingerbank-Device", device);
+        }
+        if (vendor != null) {
+            response.header("X-OUI-Vendor", vendor);
+        }
+        return response.body(body);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        deadlines.shutdownNow();
     }
     
     @PostMapping("/ep3")
     public String getEndpointFromIEEE(@RequestBody EndPoint endPoint){
         String endP = endPoint.getMac();
-        OuiRetrieve oui = new OuiRetrieve();    
         logger.info("________________________________________________");
         logger.info("MAC address inside getEndpointFromIEEE " + endP);
         logger.info("________________________________________________");
-        String result = oui.getOUIFromIEEE(endP);
+        String result = oui.getOUIFromIEEE(endPoint.macAddress());
         //EndPoint ep = new EndPoint();
         //ep.setMac("11:11:11:11:11:11");
         return result;
     }
 
+    /**
+     * Resolves many MACs in one call. Takes either a JSON array of MAC strings,
+     * answered with a JSON array, or newline-delimited JSON strings, answered
+     * one vendor per line. Vendors come back in request order, null when
+     * unknown. Input is parsed and output written as a stream, so neither side
+     * is held in memory.
+     */
+    @PostMapping(value = "/ep3/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON})
+    public void getEndpointsFromIEEE(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (JsonParser in = jsonFactory.createParser(request.getInputStream())) {
+            JsonToken token = in.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = in.nextToken();
+            }
+            response.setContentType(array ? MediaType.APPLICATION_JSON_VALUE : NDJSON);
+            try (JsonGenerator out = jsonFactory.createGenerator(response.getOutputStream())) {
+                out.setRootValueSeparator(null);
+                if (array) {
+                    out.writeStartArray();
+                }
+                int count = 0;
+                while (token != null && token != JsonToken.END_ARRAY) {
+                    String vendor = null;
+                    if (token == JsonToken.VALUE_STRING) {
+                        vendor = oui.getOUIFromIEEE(in.getTextCharacters(), in.getTextOffset(), in.getTextLength());
+                    } else {
+                        in.skipChildren();
+                    }
+                    if (vendor != null) {
+                        out.writeString(vendor);
+                    } else {
+                        out.writeNull();
+                    }
+                    if (!array) {
+                        out.writeRaw('\n');
+                    }
+                    count++;
+                    token = in.nextToken();
+                }
+                if (array) {
+                    out.writeEndArray();
+                }
+                logger.info("Resolved batch of " + count + " MAC addresses");
+            }
+        }
+    }
+
+    @GetMapping("/oui/vendors")
+    public List<OuiVendor> searchVendors(@RequestParam("q") String query,
+                                         @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return oui.searchVendors(query, Math.min(limit, 1000));
+    }
+
+    @GetMapping("/oui/vendor")
+    public ResponseEntity<OuiVendor> getVendorPrefixes(@RequestParam("name") String name) {
+        OuiVendor vendor = oui.getVendor(name);
+        return vendor == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(vendor);
+    }
+
+    @PostMapping("/oui/reload")
+    public ResponseEntity<String> reloadOui() {
+        if (!oui.scheduleReload()) {
+            return ResponseEntity.badRequest().body("oui.registry.files is not configured");
+        }
+        return ResponseEntity.accepted().body("OUI registry reload scheduled");
+    }
+
+    @GetMapping("/fingerbank/status")
+    public Map<String, Object> getFingerbankStatus() {
+        return fb.getStatus();
+    }
+
+    @GetMapping("/fingerbank/cache")
+    public Map<String, Map<String, Long>> getFingerbankCacheStats() {
+        return fb.getCacheStats();
+    }
+
+    @GetMapping("/endpoint")
+    public ResponseEntity<Map<String, String>> getEndpoint(@RequestParam("mac") String mac) {
+        long address = MacAddress.parse(mac);
+        if (address == MacAddress.INVALID) {
+            return ResponseEntity.badRequest().build();
+        }
+        EndPoint endPoint = registry.get(address);
+        return endPoint == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(endPoint.getAttributes());
+    }
+
+    @GetMapping("/endpoint/stats")
+    public Map<String, Long> getEndpointRegistryStats() {
+        return registry.stats();
+    }
+
+    /**
+     * Finds stored endpoints by searchable attributes, given as query
+     * parameters. Different attributes must all match, repeated values of one
+     * attribute are alternatives, e.g.
+     * {@code ?EndPointPolicy=Apple-iPhone&EndPointPolicy=Apple-iPad&IdentityGroupID=...}.
+     * Answers the number of matches and at most {@code limit} of their MACs.
+     */
+    @GetMapping("/endpoint/search")
+    public ResponseEntity<?> searchEndpoints(@RequestParam MultiValueMap<String, String> params,
+                                             @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        Map<String, List<String>> terms = new LinkedHashMap<>(params);
+        terms.remove("limit");
+        List<Long> macs = new ArrayList<>();
+        long count;
+        try {
+            count = registry.search(terms, Math.max(0, Math.min(limit, 10000)), macs);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        List<String> matches = new ArrayList<>(macs.size());
+        for (long mac : macs) {
+            matches.add(MacAddress.toString(mac));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", count);
+        result.put("macs", matches);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Finds the endpoints holding an IPv4 or IPv6 address.
+     */
+    @GetMapping("/endpoint/ip")
+    public ResponseEntity<?> findEndpointsByIp(@RequestParam("address") String address) {
+        long[] macs;
+        try {
+            macs = registry.findByIp(address);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        return macs.length == 0 ? ResponseEntity.notFound().build() : ResponseEntity.ok(macStrings(macs));
+    }
+
+    /**
+     * Lists the endpoint addresses inside a CIDR block, e.g.
+     * {@code ?cidr=10.1.0.0/16}, in address order. Answers the number of
+     * addresses and at most {@code limit} of them with the MACs holding them.
+     */
+    @GetMapping("/endpoint/ip/range")
+    public ResponseEntity<?> findEndpointsByIpRange(@RequestParam("cidr") String cidr,
+                                                    @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        Map<String, long[]> addresses = new LinkedHashMap<>();
+        long count;
+        try {
+            count = registry.findByIpRange(cidr, Math.max(0, Math.min(limit, 10000)), addresses);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        Map<String, List<String>> matches = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> address : addresses.entrySet()) {
+            matches.put(address.getKey(), macStrings(address.getValue()));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", count);
+        result.put("addresses", matches);
+        return ResponseEntity.ok(result);
+    }
+
+    private static List<String> macStrings(long[] macs) {
+        List<String> strings = new ArrayList<>(macs.length);
+        for (long mac : macs) {
+            strings.add(MacAddress.toString(mac));
+        }
+        return strings;
+    }
+
+    @GetMapping("/endpoint/index")
+    public Map<String, Long> getEndpointIndexStats() {
+        return registry.indexStats();
+    }
+
     @PostMapping("/ep")
     public oui create(@RequestBody Map<String, String> body) {
         ObjectMapper mapper = new ObjectMapper();
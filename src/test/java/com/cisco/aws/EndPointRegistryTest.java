@@ -0,0 +1,62 @@
+package com.cisco.aws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Storing and bounding of endpoints merged into the {@link EndPointRegistry}.
+ */
+public class EndPointRegistryTest {
+
+    @Test
+    public void singleShardIsRoundedUpToTwo() {
+        for (int shards = 0; shards <= 2; shards++) {
+            EndPointRegistry registry = new EndPointRegistry(shards, 16);
+            EndPoint stored = registry.merge(endPoint("00:11:22:33:44:55"));
+            assertSame(stored, registry.get(MacAddress.parse("00:11:22:33:44:55")));
+            assertEquals(2L, (long) registry.stats().get("shards"));
+        }
+    }
+
+    @Test
+    public void locallyAdministeredMacsAreNotStoredByDefault() {
+        EndPointRegistry registry = new EndPointRegistry(4, 16, 0, false);
+        registry.merge(endPoint("02:11:22:33:44:55"));
+        registry.merge(endPoint("00:11:22:33:44:55"));
+        assertNull(registry.get(MacAddress.parse("02:11:22:33:44:55")));
+        assertEquals(1, registry.size());
+        assertEquals(1L, (long) registry.stats().get("notStored"));
+
+        EndPointRegistry storing = new EndPointRegistry(4, 16, 0, true);
+        storing.merge(endPoint("02:11:22:33:44:55"));
+        assertEquals(1, storing.size());
+    }
+
+    @Test
+    public void mergeStoresNoNewEndpointsBeyondTheMaximum() {
+        EndPointRegistry registry = new EndPointRegistry(2, 16, 64, false);
+        for (int i = 0; i < 1000; i++) {
+            registry.merge(endPoint(MacAddress.toString(0x001122000000L + i)));
+        }
+        assertEquals(64, registry.size());
+        assertEquals(1000 - 64L, (long) registry.stats().get("notStored"));
+
+        // Endpoints already stored are still updated
+        long first = 0x001122000000L;
+        while (registry.get(first) == null) {
+            first++;
+        }
+        EndPoint update = endPoint(MacAddress.toString(first));
+        update.getAttributes().put(EndPoint.HOSTNAME, "renamed");
+        assertEquals("renamed", registry.merge(update).getAttributes().get(EndPoint.HOSTNAME));
+    }
+
+    private static EndPoint endPoint(String mac) {
+        EndPoint endPoint = new EndPoint();
+        endPoint.getAttributes().put(EndPoint.MACADDRESS, mac);
+        return endPoint;
+    }
+}
@@ -0,0 +1,87 @@
+package com.cisco.aws;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Concurrent lookups of the same fingerprint, against a local FingerBank stub
+ * that holds its answer until every lookup has been started, must share one
+ * upstream call.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = FingerBank.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class FingerBankCoalescingTest {
+
+    private static final int LOOKUPS = 16;
+
+    private static final CountDownLatch release = new CountDownLatch(1);
+    private static FingerBankStub stub;
+
+    @Autowired
+    private FingerBank fingerBank;
+
+    @BeforeClass
+    public static void startStub() throws IOException {
+        stub = FingerBankStub.start(payload -> {
+            release.await(10, TimeUnit.SECONDS);
+            return "Stub Printer";
+        });
+    }
+
+    @AfterClass
+    public static void stopStub() {
+        release.countDown();
+        stub.stop();
+    }
+
+    @Test
+    public void identicalConcurrentLookupsShareOneUpstreamCall() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(LOOKUPS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CompletableFuture<String>>> started = new ArrayList<>();
+        for (int i = 0; i < LOOKUPS; i++) {
+            started.add(clients.submit(() -> {
+                start.await();
+                return fingerBank.postDeviceNameAsync(endPoint());
+            }));
+        }
+        start.countDown();
+        List<CompletableFuture<String>> lookups = new ArrayList<>();
+        for (Future<CompletableFuture<String>> lookup : started) {
+            lookups.add(lookup.get(10, TimeUnit.SECONDS));
+        }
+        clients.shutdown();
+
+        release.countDown();
+        for (CompletableFuture<String> lookup : lookups) {
+            assertEquals("Stub Printer", lookup.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, stub.calls());
+        assertEquals(LOOKUPS - 1, (long) fingerBank.getCacheStats().get("lookups").get("coalesced"));
+    }
+
+    private static EndPoint endPoint() {
+        EndPoint endPoint = new EndPoint();
+        endPoint.getAttributes().put("dhcp-parameter-request-list", "1, 3, 6, 15, 44, 46, 47");
+        endPoint.getAttributes().put("dhcp-class-identifier", "MSFT 5.0");
+        endPoint.getAttributes().put(EndPoint.HOSTNAME, "printer-2f");
+        return endPoint;
+    }
+}
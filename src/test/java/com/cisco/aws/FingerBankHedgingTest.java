@@ -0,0 +1,93 @@
+package com.cisco.aws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * A call stuck far past the observed p95, against a local FingerBank stub
+ * that answers at once except for the first call for one fingerprint, must
+ * be answered by its hedge instead of waiting for the slow call.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = FingerBank.class, webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "fingerbank.hedge.enabled=true",
+        "fingerbank.hedge.budget-percent=50",
+        "fingerbank.breaker.min-calls=20",
+        "fingerbank.adaptive-timeout.min-ms=10000",
+        "fingerbank.read-timeout-ms=10000"})
+public class FingerBankHedgingTest {
+
+    private static final int WARM_UP = 30;
+    private static final long SLOW_MS = 3000;
+
+    private static final CountDownLatch release = new CountDownLatch(1);
+    private static final AtomicInteger slowCalls = new AtomicInteger();
+    private static FingerBankStub stub;
+
+    @Autowired
+    private FingerBank fingerBank;
+
+    @BeforeClass
+    public static void startStub() throws IOException {
+        stub = FingerBankStub.start(payload -> {
+            if (payload.contains("slow-host") && slowCalls.getAndIncrement() == 0) {
+                release.await(SLOW_MS, TimeUnit.MILLISECONDS);
+                return "Slow Answer";
+            }
+            return "Stub Camera";
+        });
+    }
+
+    @AfterClass
+    public static void stopStub() {
+        release.countDown();
+        stub.stop();
+    }
+
+    @Test
+    public void slowCallIsAnsweredByItsHedge() throws Exception {
+        // Fill the latency window, so the p95 is known
+        for (int i = 0; i < WARM_UP; i++) {
+            assertEquals("Stub Camera", fingerBank.postDeviceName(endPoint("warm-up-" + i)));
+        }
+
+        // Warm-up calls past the p95 may have been hedged too
+        Map<String, Long> before = hedging();
+        long start = System.nanoTime();
+        String device = fingerBank.postDeviceNameAsync(endPoint("slow-host")).get(2 * SLOW_MS, TimeUnit.MILLISECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("Stub Camera", device);
+        assertTrue("answered after " + elapsedMs + " ms", elapsedMs < SLOW_MS / 2);
+        assertEquals(2, slowCalls.get());
+        Map<String, Long> after = hedging();
+        assertEquals(1L, after.get("hedges") - before.get("hedges"));
+        assertEquals(1L, after.get("won") - before.get("won"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Long> hedging() {
+        return (Map<String, Long>) fingerBank.getStatus().get("hedging");
+    }
+
+    private static EndPoint endPoint(String hostName) {
+        EndPoint endPoint = new EndPoint();
+        endPoint.getAttributes().put("dhcp-parameter-request-list", "1, 3, 6, 15, 119, 252");
+        endPoint.getAttributes().put(EndPoint.HOSTNAME, hostName);
+        return endPoint;
+    }
+}
@@ -0,0 +1,90 @@
+package com.cisco.aws;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Allocation and time per FingerBank request body, built from the attribute
+ * map by {@link FingerBank#createFingerbankPayload} and
+ * {@link FingerBank#writePayload}, next to the reflective JSONObject
+ * serialisation they replaced. Not a test; run it with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dstart-class=com.cisco.aws.FingerBankPayloadBenchmark
+ * </pre>
+ * The endpoint carries the four significant attributes and 20 others. Each
+ * round builds 20,000 bodies per way; allocation is measured on the calling
+ * thread.
+ */
+public class FingerBankPayloadBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int CALLS = 20000;
+
+    public static void main(String[] args) {
+        // The payload conversion logs at debug, which would dominate the timing
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        EndPoint ep = new EndPoint();
+        ep.setMac("00:1B:63:33:44:55");
+        ep.getAttributes().put("dhcp-parameter-request-list", "1, 3, 6, 15, 31, 33, 43, 44, 46, 47, 119, 121, 249, 252");
+        ep.getAttributes().put("dhcp-class-identifier", "MSFT 5.0");
+        ep.getAttributes().put(EndPoint.HOSTNAME, "LAPTOP-1234");
+        ep.getAttributes().put(EndPoint.USERAGENT, "Mozilla/5.0 (Windows NT 10.0; Win64; x64)");
+        for (int i = 0; i < 20; i++) {
+            ep.getAttributes().put("attribute" + i, "value" + i);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytes0 = threads.getThreadAllocatedBytes(thread);
+            long time0 = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                sink += reflectivePayload(ep).length;
+            }
+            long bytes1 = threads.getThreadAllocatedBytes(thread);
+            long time1 = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                sink += FingerBank.writePayload(FingerBank.createFingerbankPayload(ep.getAttributes())).length;
+            }
+            long bytes2 = threads.getThreadAllocatedBytes(thread);
+            long time2 = System.nanoTime();
+            System.out.printf("JSONObject: %,d B %.2f us per payload | attribute map: %,d B %.2f us per payload%n",
+                    (bytes1 - bytes0) / CALLS, (time1 - time0) / 1e3 / CALLS,
+                    (bytes2 - bytes1) / CALLS, (time2 - time1) / 1e3 / CALLS);
+        }
+        System.out.println(new String(FingerBank.writePayload(FingerBank.createFingerbankPayload(ep.getAttributes())),
+                StandardCharsets.UTF_8) + " " + sink);
+    }
+
+    /**
+     * The body as it was built before: the whole endpoint serialised
+     * reflectively, its attributes read back and the significant ones copied
+     * into a new JSONObject.
+     */
+    static byte[] reflectivePayload(EndPoint ep) {
+        JSONObject attributes = new JSONObject(ep).getJSONObject("attributes");
+        JSONObject payload = new JSONObject();
+        if (attributes.has("dhcp-parameter-request-list")) {
+            payload.put("dhcp_fingerprint", attributes.getString("dhcp-parameter-request-list"));
+        }
+        if (attributes.has("dhcp-class-identifier")) {
+            payload.put("dhcp_vendor", attributes.getString("dhcp-class-identifier"));
+        }
+        if (attributes.has(EndPoint.USERAGENT)) {
+            payload.put("user_agents", attributes.getString(EndPoint.USERAGENT));
+        }
+        if (attributes.has(EndPoint.HOSTNAME)) {
+            payload.put("hostname", attributes.getString(EndPoint.HOSTNAME));
+        }
+        return payload.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
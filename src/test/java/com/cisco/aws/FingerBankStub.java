@@ -0,0 +1,90 @@
+package com.cisco.aws;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the FingerBank interrogate API. Each call is answered
+ * with the device name the responder picks for the payload, on a thread of
+ * its own, so slow answers do not hold up the others.
+ */
+final class FingerBankStub {
+
+    interface Responder {
+        /**
+         * @param payload the JSON body FingerBank was sent.
+         * @return the device name to answer with.
+         */
+        String deviceName(String payload) throws InterruptedException;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private FingerBankStub(Responder responder) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api", exchange -> {
+            calls.incrementAndGet();
+            String name;
+            try (InputStream in = exchange.getRequestBody()) {
+                name = responder.deviceName(read(in));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                name = "Interrupted";
+            }
+            byte[] body = ("{\"device\":{\"name\":\"" + name + "\"}}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    /**
+     * Starts a stub and points {@code fingerbank.url} at it, for the
+     * application context started after it.
+     */
+    static FingerBankStub start(Responder responder) throws IOException {
+        FingerBankStub stub = new FingerBankStub(responder);
+        System.setProperty("fingerbank.url", stub.url());
+        return stub;
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+    }
+
+    /**
+     * @return the number of calls received so far.
+     */
+    int calls() {
+        return calls.get();
+    }
+
+    void stop() {
+        server.stop(0);
+        handlers.shutdownNow();
+        System.clearProperty("fingerbank.url");
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            body.write(buffer, 0, n);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+package com.cisco.aws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * User agent matching of the {@link LocalFingerprints} database.
+ */
+public class LocalFingerprintsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void multiTokenPatternsMatchConsecutiveTokens() throws IOException {
+        LocalFingerprints db = load("user_agent\tDalvik/2.1.0\tAndroid\n"
+                + "user_agent\tiPhone OS\tiPhone\n"
+                + "user_agent\tCrKey\tChromecast\n");
+        assertEquals("Android", db.match(userAgent("Dalvik/2.1.0 (Linux; U; Android 9; SM-G960F)")));
+        assertEquals("iPhone", db.match(userAgent("Mozilla/5.0 (iPhone; CPU iPhone OS 16_0 like Mac OS X)")));
+        assertEquals("Chromecast", db.match(userAgent("Mozilla/5.0 (X11; Linux armv7l) CrKey/1.56.500000")));
+        assertNull(db.match(userAgent("Dalvik/2.1.1 (Linux; U; Android 9)")));
+        assertNull(db.match(userAgent("Mozilla/5.0 (iPhone; CPU OS iPhone 16_0)")));
+    }
+
+    @Test
+    public void earliestMatchingLineWins() throws IOException {
+        LocalFingerprints db = load("user_agent\tAndroid 9\tAndroid 9 Device\n"
+                + "user_agent\tDalvik\tAndroid Device\n");
+        assertEquals("Android 9 Device", db.match(userAgent("Dalvik/2.1.0 (Linux; U; Android 9)")));
+        assertEquals("Android Device", db.match(userAgent("Dalvik/2.1.0 (Linux; U; Android 10)")));
+    }
+
+    @Test
+    public void patternWithoutTokensIsRejected() throws IOException {
+        try {
+            load("# comment\nuser_agent\t/ ;\tNothing\n");
+            fail("loaded a pattern without tokens");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(":2: "));
+        }
+    }
+
+    private LocalFingerprints load(String lines) throws IOException {
+        Path file = folder.newFile("fingerprints.tsv").toPath();
+        Files.write(file, lines.getBytes(StandardCharsets.UTF_8));
+        return LocalFingerprints.load(file);
+    }
+
+    private static Map<String, String> userAgent(String ua) {
+        return Collections.singletonMap("user_agents", ua);
+    }
+}
@@ -0,0 +1,93 @@
+package com.cisco.aws;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parse time and allocation per registry file of {@link OuiRegistryParser},
+ * next to the regex parser it replaced. Not a test; run it with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dstart-class=com.cisco.aws.OuiRegistryParserBenchmark [-Dexec.args=registry.txt]
+ * </pre>
+ * ({@code start-class}, because the Spring Boot parent binds the exec main
+ * class to it.)
+ * Each parser reads the registry (the bundled oui.txt by default) from memory
+ * 30 times and the last 5 runs are reported. Allocation is measured on the
+ * parsing thread and excludes the builder's initial tables.
+ */
+public class OuiRegistryParserBenchmark {
+
+    private static final int RUNS = 30;
+    private static final int REPORTED = 5;
+
+    interface Parser {
+        int parse(InputStream in, OuiIndex.Builder builder) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        byte[] registry = Files.readAllBytes(Paths.get(args.length > 0 ? args[0] : "src/main/resources/oui.txt"));
+        run("regex parser", registry, OuiRegistryParserBenchmark::regexParse);
+        run("byte scanner", registry, OuiRegistryParser::parse);
+    }
+
+    private static void run(String name, byte[] registry, Parser parser) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int run = 0; run < RUNS; run++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            OuiIndex.Builder builder = new OuiIndex.Builder();
+            long tables = threads.getThreadAllocatedBytes(thread) - before;
+            long start = System.nanoTime();
+            int count = parser.parse(new ByteArrayInputStream(registry), builder);
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(thread) - before - tables;
+            if (run >= RUNS - REPORTED) {
+                System.out.printf("%s: %d assignments, %.1f ms, %,d KB allocated%n", name, count, elapsed / 1e6,
+                        allocated / 1024);
+            }
+        }
+    }
+
+    /**
+     * The line-by-line regex parser {@link OuiRegistryParser} replaced, handing
+     * vendor names to the builder as UTF-8.
+     */
+    static int regexParse(InputStream is, OuiIndex.Builder builder) throws IOException {
+        Matcher hex = Pattern.compile("^\\s*([0-9a-fA-F]{2})-([0-9a-fA-F]{2})-([0-9a-fA-F]{2})\\s+\\(hex\\).*$").matcher("");
+        Matcher m = Pattern.compile("^\\s*([0-9a-fA-F]{6})(?:-([0-9a-fA-F]{6}))?\\s+\\(base 16\\)\\s+(.*)$").matcher("");
+        int count = 0;
+        long block = -1;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            for (String s = br.readLine(); s != null; s = br.readLine()) {
+                if (hex.reset(s).matches()) {
+                    block = Long.parseLong(hex.group(1) + hex.group(2) + hex.group(3), 16);
+                } else if (m.reset(s).matches()) {
+                    long low = Long.parseLong(m.group(1), 16);
+                    byte[] vendor = m.group(3).trim().getBytes(StandardCharsets.UTF_8);
+                    if (m.group(2) == null) {
+                        builder.add(low, 24, vendor, 0, vendor.length);
+                        count++;
+                    } else if (block >= 0) {
+                        long span = Long.parseLong(m.group(2), 16) - low + 1;
+                        int hostBits = Long.numberOfTrailingZeros(span);
+                        if (span == Long.lowestOneBit(span) && (low & (span - 1)) == 0) {
+                            builder.add(((block << 24) | low) >>> hostBits, 48 - hostBits, vendor, 0, vendor.length);
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,100 @@
+package com.cisco.aws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Longest-prefix matches over small MA-L, MA-M, MA-S and IAB registries in
+ * the IEEE text format, under {@code src/test/resources/oui}.
+ */
+public class OuiRegistryParserTest {
+
+    private static final String RA = "IEEE Registration Authority";
+
+    private static OuiIndex index;
+
+    @BeforeClass
+    public static void parseRegistries() throws IOException {
+        OuiIndex.Builder builder = new OuiIndex.Builder();
+        assertEquals(4, parse("mal.txt", builder));
+        assertEquals(1, parse("mam.txt", builder));
+        assertEquals(1, parse("mas.txt", builder));
+        assertEquals(1, parse("iab.txt", builder));
+        index = builder.build();
+    }
+
+    private static int parse(String registry, OuiIndex.Builder builder) throws IOException {
+        InputStream in = OuiRegistryParserTest.class.getResourceAsStream("/oui/" + registry);
+        return OuiRegistryParser.parse(in, builder);
+    }
+
+    @Test
+    public void maLargeBlocksMatchOnTheFirst24Bits() {
+        assertEquals("Apple, Inc.", vendor("00:1B:63:12:34:56"));
+        assertEquals(RA, vendor("70:B3:D5:00:00:01"));
+    }
+
+    @Test
+    public void maMediumBlocksMatchOn28Bits() {
+        assertEquals("Annapurna Labs", vendor("58:E8:76:D1:23:45"));
+        assertEquals("Annapurna Labs", vendor("58:E8:76:DF:FF:FF"));
+        assertEquals(RA, vendor("58:E8:76:E0:00:00"));
+        assertEquals(28, prefixLength("58:E8:76:D0:00:00", "Annapurna Labs"));
+    }
+
+    @Test
+    public void maSmallAndIabBlocksMatchOn36Bits() {
+        assertEquals("Second Corp", vendor("70:B3:D5:F2:F1:23"));
+        assertEquals(RA, vendor("70:B3:D5:F2:E0:00"));
+        assertEquals("T.L.S. Corporation", vendor("00:50:C2:00:0A:BC"));
+        assertEquals(RA, vendor("00:50:C2:00:1A:BC"));
+        assertEquals(36, prefixLength("70:B3:D5:F2:F0:00", "Second Corp"));
+    }
+
+    @Test
+    public void rangeDisagreeingWithItsHeaderIsSkipped() {
+        assertEquals(RA, vendor("58:E8:76:31:00:00"));
+    }
+
+    @Test
+    public void rangeIsNotFiledUnderThePreviousRecordsBlock() throws IOException {
+        String registry = "00-50-C2   (hex)\t\tFirst Corp\r\n"
+                + "000000-000FFF     (base 16)\t\tFirst Corp\r\n"
+                + "\r\n"
+                + "70-B3-D5-F2-FX   (hex)\t\tMalformed Corp\r\n"
+                + "F2F000-F2FFFF     (base 16)\t\tMalformed Corp\r\n"
+                + "\r\n"
+                + "00-50-C2   (hex)\t\tThird Corp\r\n"
+                + "\r\n"
+                + "F2F000-F2FFFF     (base 16)\t\tThird Corp\r\n";
+        OuiIndex.Builder builder = new OuiIndex.Builder();
+        assertEquals(1, OuiRegistryParser.parse(
+                new ByteArrayInputStream(registry.getBytes(StandardCharsets.UTF_8)), builder));
+        OuiIndex parsed = builder.build();
+        assertEquals("First Corp", parsed.get(MacAddress.parse("00:50:C2:00:00:01")));
+        assertNull(parsed.get(MacAddress.parse("00:50:C2:F2:F0:00")));
+        assertNull(parsed.get(MacAddress.parse("70:B3:D5:F2:F0:00")));
+    }
+
+    private static String vendor(String mac) {
+        return index.get(MacAddress.parse(mac));
+    }
+
+    private static int prefixLength(String mac, String vendor) {
+        long address = MacAddress.parse(mac);
+        for (int length = 48; length > 0; length--) {
+            if (vendor.equals(index.get(address >>> (48 - length), length))) {
+                return length;
+            }
+        }
+        return 0;
+    }
+}